@@ -1,11 +1,26 @@
 package properties_manager;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.xml.sax.Attributes;
 import xml_utilities.InvalidXMLFileFormatException;
+import xml_utilities.XMLElementListener;
 import xml_utilities.XMLUtilities;
 
 /**
@@ -30,6 +45,12 @@ public class PropertiesManager
     // WE'LL STORE PROPERTIES HERE
     private HashMap<String, String> properties;
     
+    // PROPERTIES NAMED BY THE CONSTANTS OF AN ENUM ARE ALSO KEPT HERE, IN
+    // AN ARRAY FOR EACH ENUM INDEXED BY ORDINAL, SO LOOKING THEM UP DOESN'T
+    // MEAN BUILDING AND HASHING A STRING. AN ENUM'S ARRAY IS BUILT AFTER
+    // THE PROPERTIES CHANGE, THE FIRST TIME ONE OF ITS CONSTANTS IS USED
+    private IdentityHashMap<Class<?>, String[]> indexedProperties;
+    
     // LISTS OF PROPERTY OPTIONS CAN BE STORED HERE
     private HashMap<String, ArrayList<String>> propertyOptionsLists;
     
@@ -47,6 +68,13 @@ public class PropertiesManager
     public static final String VALUE_ATT                        = "value";
     public static final String DATA_PATH_PROPERTY               = "DATA_PATH";
 
+    // A SNAPSHOT OF THE LOADED PROPERTIES IS KEPT NEXT TO THE XML FILE,
+    // NAMED AFTER IT WITH THIS EXTENSION
+    public static final String SNAPSHOT_EXTENSION               = ".snapshot";
+    private static final int SNAPSHOT_MAGIC                     = 0x534F4B53;
+    private static final int SNAPSHOT_VERSION                   = 1;
+    private static final String SNAPSHOT_HASH_ALGORITHM         = "SHA-256";
+
     /**
      * The constructor is private because this is a singleton.
      */
@@ -54,6 +82,7 @@ public class PropertiesManager
     {
         properties = new HashMap();
         propertyOptionsLists = new HashMap();
+        indexedProperties = new IdentityHashMap<>();
         xmlUtil = new XMLUtilities();
     }
 
@@ -87,6 +116,7 @@ public class PropertiesManager
     {
         String propName = property.toString();
         properties.put(propName, value);
+        indexedProperties.clear();
     }
  
     /**
@@ -102,6 +132,48 @@ public class PropertiesManager
         return properties.get(propName);
     }
 
+    /**
+     * Accessor method for getting a property named by an enum constant
+     * from this manager. This gives the same result as the Object version,
+     * but once the properties have been indexed for the enum it's just an
+     * array lookup by the constant's ordinal.
+     * 
+     * @param propType The key for getting a property.
+     * 
+     * @return The value associated with the key.
+     */
+    public <E extends Enum<E>> String getProperty(E propType)
+    {
+        Class<E> type = propType.getDeclaringClass();
+        String[] values = indexedProperties.get(type);
+        if (values == null)
+        {
+            values = indexProperties(type);
+        }
+        return values[propType.ordinal()];
+    }
+
+    /**
+     * This function builds the array of properties named by the constants
+     * of the type enum, indexed by their ordinals, and keeps it until the
+     * properties change.
+     * 
+     * @param type The enum whose constants name the properties.
+     * 
+     * @return The properties, indexed by ordinal.
+     */
+    private <E extends Enum<E>> String[] indexProperties(Class<E> type)
+    {
+        E[] constants = type.getEnumConstants();
+        String[] values = new String[constants.length];
+        for (int i = 0; i < constants.length; i++)
+        {
+            values[i] = properties.get(constants[i].toString());
+        }
+        indexedProperties.put(type, values);
+        return values;
+    }
+
     /**
      * Accessor method for getting a property options list associated
      * with the property key.
@@ -121,6 +193,12 @@ public class PropertiesManager
      * make sure it's a well formed document according to the rules specified
      * in the xmlSchemaFile.
      * 
+     * Since validating and parsing the XML is most of the cost of starting
+     * up, what gets loaded is also saved in a binary snapshot file next to
+     * the XML file, along with SHA-256 hashes of the XML and schema files.
+     * When both files still have the same hashes the next time, the
+     * snapshot is loaded instead, skipping the parse and validation.
+     * 
      * @param xmlDataFile XML document to load.
      * 
      * @param xmlSchemaFile Schema that the XML document should conform to.
@@ -137,43 +215,202 @@ public class PropertiesManager
         // ADD THE DATA PATH
         xmlDataFile = dataPath + xmlDataFile;
         xmlSchemaFile = dataPath + xmlSchemaFile;
+
+        // IF THE FILES HAVEN'T CHANGED, THE SNAPSHOT HAS IT ALL ALREADY
+        File snapshotFile = new File(xmlDataFile + SNAPSHOT_EXTENSION);
+        byte[] fingerprint = fingerprint(xmlDataFile, xmlSchemaFile);
+        indexedProperties.clear();
+        if ((fingerprint != null) && loadSnapshot(snapshotFile, fingerprint))
+        {
+            return;
+        }
         
-        // FIRST LOAD THE FILE
-        Document doc = xmlUtil.loadXMLDocument(xmlDataFile, xmlSchemaFile);
-        
-        // NOW LOAD ALL THE PROPERTIES
-        Node propertyListNode = xmlUtil.getNodeWithName(doc, PROPERTY_LIST_ELEMENT);
-        ArrayList<Node> propNodes = xmlUtil.getChildNodesWithName(propertyListNode, PROPERTY_ELEMENT);
-        for(Node n : propNodes)
+        // READ THE FILE, VALIDATING AS WE GO, AND PICK OUT THE PROPERTIES
+        // AND OPTIONS AS THEY GO BY. THEY'RE ONLY KEPT ONCE THE WHOLE FILE
+        // HAS TURNED OUT TO BE VALID
+        final LinkedHashMap<String, String> loadedProperties = new LinkedHashMap<>();
+        final LinkedHashMap<String, ArrayList<String>> loadedOptionsLists = new LinkedHashMap<>();
+        xmlUtil.streamXMLDocument(xmlDataFile, xmlSchemaFile, new XMLElementListener()
         {
-            NamedNodeMap attributes = n.getAttributes();
-            for (int i = 0; i < attributes.getLength(); i++)
+            // THE OPTIONS LIST BEING READ
+            private ArrayList<String> options;
+
+            @Override
+            public void elementStarted(String elementName, Attributes attributes)
+            {
+                if (elementName.equals(PROPERTY_ELEMENT))
+                {
+                    loadedProperties.put(attributes.getValue(NAME_ATT), attributes.getValue(VALUE_ATT));
+                }
+                else if (elementName.equals(PROPERTY_OPTIONS_ELEMENT))
+                {
+                    options = new ArrayList<>();
+                    loadedOptionsLists.put(attributes.getValue(NAME_ATT), options);
+                }
+            }
+
+            @Override
+            public void elementEnded(String elementName, String text)
             {
-                Node att = attributes.getNamedItem(NAME_ATT);
-                String attName = attributes.getNamedItem(NAME_ATT).getTextContent();
-                String attValue = attributes.getNamedItem(VALUE_ATT).getTextContent();
-                properties.put(attName, attValue);
+                if (elementName.equals(OPTION_ELEMENT))
+                {
+                    options.add(text);
+                }
             }
+        });
+        properties.putAll(loadedProperties);
+        propertyOptionsLists.putAll(loadedOptionsLists);
+
+        // AND REMEMBER IT ALL FOR NEXT TIME
+        if (fingerprint != null)
+        {
+            saveSnapshot(snapshotFile, fingerprint, loadedProperties, loadedOptionsLists);
         }
-        
-        // AND THE PROPERTIES FROM OPTION LISTS
-        Node propertyOptionsListNode = xmlUtil.getNodeWithName(doc, PROPERTY_OPTIONS_LIST_ELEMENT);
-        if (propertyOptionsListNode != null)
+    }
+
+    /**
+     * This function hashes the contents of the XML and schema files, so we
+     * can tell whether either has changed since a snapshot was taken.
+     * 
+     * @return The SHA-256 hash of the XML file followed by that of the
+     * schema file, or null if either can't be read.
+     */
+    private byte[] fingerprint(String xmlDataFile, String xmlSchemaFile)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance(SNAPSHOT_HASH_ALGORITHM);
+            byte[] xmlHash = digest.digest(Files.readAllBytes(new File(xmlDataFile).toPath()));
+            byte[] schemaHash = digest.digest(Files.readAllBytes(new File(xmlSchemaFile).toPath()));
+            byte[] fingerprint = Arrays.copyOf(xmlHash, xmlHash.length + schemaHash.length);
+            System.arraycopy(schemaHash, 0, fingerprint, xmlHash.length, schemaHash.length);
+            return fingerprint;
+        }
+        // WITHOUT A FINGERPRINT WE JUST DON'T USE SNAPSHOTS, AND LET
+        // THE XML LOADING REPORT ANY PROBLEMS WITH THE FILES
+        catch (IOException | NoSuchAlgorithmException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * This function loads the properties from a snapshot, but only if the
+     * snapshot was taken of files with the given fingerprint. Nothing is
+     * added unless the whole snapshot could be read.
+     * 
+     * @return true if the snapshot was loaded, false if the XML needs to
+     * be loaded instead.
+     */
+    private boolean loadSnapshot(File snapshotFile, byte[] fingerprint)
+    {
+        if (!snapshotFile.exists())
+        {
+            return false;
+        }
+        try
         {
-            ArrayList<Node> propertyOptionsNodes = xmlUtil.getChildNodesWithName(propertyOptionsListNode, PROPERTY_OPTIONS_ELEMENT);
-            for (Node n : propertyOptionsNodes)
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+            try
             {
-                NamedNodeMap attributes = n.getAttributes();
-                String name = attributes.getNamedItem(NAME_ATT).getNodeValue();
-                ArrayList<String> options = new ArrayList();
-                propertyOptionsLists.put(name, options);
-                ArrayList<Node> optionsNodes = xmlUtil.getChildNodesWithName(n, OPTION_ELEMENT);
-                for (Node oNode : optionsNodes)
+                if ((in.readInt() != SNAPSHOT_MAGIC) || (in.readInt() != SNAPSHOT_VERSION))
                 {
-                    String option = oNode.getTextContent();
-                    options.add(option);
+                    return false;
                 }
+                byte[] snapshotFingerprint = new byte[fingerprint.length];
+                in.readFully(snapshotFingerprint);
+                if (!Arrays.equals(snapshotFingerprint, fingerprint))
+                {
+                    return false;
+                }
+                HashMap<String, String> loadedProperties = new HashMap<>();
+                int numProperties = in.readInt();
+                for (int i = 0; i < numProperties; i++)
+                {
+                    String name = in.readUTF();
+                    loadedProperties.put(name, in.readUTF());
+                }
+                HashMap<String, ArrayList<String>> loadedOptionsLists = new HashMap<>();
+                int numOptionsLists = in.readInt();
+                for (int i = 0; i < numOptionsLists; i++)
+                {
+                    String name = in.readUTF();
+                    int numOptions = in.readInt();
+                    ArrayList<String> options = new ArrayList<>(numOptions);
+                    for (int j = 0; j < numOptions; j++)
+                    {
+                        options.add(in.readUTF());
+                    }
+                    loadedOptionsLists.put(name, options);
+                }
+                properties.putAll(loadedProperties);
+                propertyOptionsLists.putAll(loadedOptionsLists);
+                return true;
+            }
+            finally
+            {
+                in.close();
             }
         }
+        // A DAMAGED SNAPSHOT IS NO PROBLEM, THE XML IS STILL THERE
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * This function saves what was loaded from the XML in a snapshot. It's
+     * written to a temporary file that then replaces the old snapshot, so
+     * a snapshot is never seen half written.
+     */
+    private void saveSnapshot(File snapshotFile, byte[] fingerprint,
+            HashMap<String, String> loadedProperties,
+            HashMap<String, ArrayList<String>> loadedOptionsLists)
+    {
+        // THE SCHEMA LETS AN OPTIONS LIST GO WITHOUT A NAME, WHICH THE
+        // SNAPSHOT HAS NO WAY TO WRITE, SO SUCH FILES ARE NEVER SNAPSHOT
+        if (loadedOptionsLists.containsKey(null))
+        {
+            return;
+        }
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try
+        {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try
+            {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.write(fingerprint);
+                out.writeInt(loadedProperties.size());
+                for (Map.Entry<String, String> property : loadedProperties.entrySet())
+                {
+                    out.writeUTF(property.getKey());
+                    out.writeUTF(property.getValue());
+                }
+                out.writeInt(loadedOptionsLists.size());
+                for (Map.Entry<String, ArrayList<String>> optionsList : loadedOptionsLists.entrySet())
+                {
+                    out.writeUTF(optionsList.getKey());
+                    out.writeInt(optionsList.getValue().size());
+                    for (String option : optionsList.getValue())
+                    {
+                        out.writeUTF(option);
+                    }
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        // IF WE CAN'T SAVE IT, WE'LL JUST LOAD THE XML AGAIN NEXT TIME
+        catch (IOException | RuntimeException e)
+        {
+            tempFile.delete();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,381 @@
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import sokoban.engine.GameState;
+import sokoban.engine.Level;
+import sokoban.file.LevelPack;
+import sokoban.solver.SokobanSolver;
+import sokoban.solver.SolverConfig;
+import sokoban.solver.SolverResult;
+
+/**
+ * LevelValidator checks level files from the command line, without starting
+ * the game or JavaFX, so broken levels are found before anyone tries to play
+ * them. It's run like this:
+ *
+ * java application.LevelValidator [--solve] [--time=SECONDS] [--threads=N] PATH...
+ *
+ * where each PATH is a .sok file, a .sokpack level pack, or a directory
+ * holding either. Every level is checked on a fork-join pool, for a header
+ * that matches the file's size, known cell values, exactly one player, as
+ * many boxes as goals and walls all the way around the player. With --solve,
+ * each valid level is also handed to the solver, which gets --time seconds,
+ * and a level the solver doesn't solve in that time counts as invalid.
+ *
+ * The report goes to standard out as one JSON object per line, one line per
+ * level, in the order the levels were given. The exit status is 0 if every
+ * level is valid, and solved if --solve was given, 1 if any isn't, and 2 if
+ * the arguments are wrong.
+ */
+public class LevelValidator {
+
+    private static final String LEVEL_EXTENSION = ".sok";
+    private static final String PACK_EXTENSION = ".sokpack";
+
+    // A .sok FILE STARTS WITH ITS COLUMNS AND ROWS, THEN ONE INT PER CELL
+    private static final int SOK_HEADER_SIZE = 8;
+
+    // THE HIGHEST CELL VALUE A LEVEL MAY USE
+    private static final int MAX_CELL_VALUE = GameState.PLAYER_ON_GOAL;
+
+    private static final long DEFAULT_SOLVE_SECONDS = 10;
+
+    /**
+     * One level to check, either a whole .sok file or one level in a pack.
+     */
+    private static class LevelSource {
+
+        File file;
+        LevelPack pack;
+        int packIndex;
+
+        // FILLED IN ONCE THE LEVEL HAS BEEN CHECKED
+        String report;
+        boolean valid;
+
+        String getName() {
+            return pack == null ? file.getPath() : file.getPath() + "#" + packIndex;
+        }
+    }
+
+    private final boolean solve;
+    private final SolverConfig solverConfig;
+
+    // EACH POOL THREAD KEEPS ITS OWN SOLVER, SINCE A SOLVER ISN'T SHARED
+    private final ThreadLocal<SokobanSolver> solvers;
+
+    /**
+     * Constructs a validator.
+     *
+     * @param initSolve Whether to run the solver on every valid level.
+     *
+     * @param initSolveMillis How long the solver may spend on each level.
+     */
+    public LevelValidator(boolean initSolve, long initSolveMillis) {
+        solve = initSolve;
+        solverConfig = new SolverConfig(initSolveMillis, SolverConfig.DEFAULT_MEMORY_BUDGET_BYTES);
+        solvers = ThreadLocal.withInitial(() -> new SokobanSolver(solverConfig));
+    }
+
+    public static void main(String[] args) {
+        boolean solve = false;
+        long solveSeconds = DEFAULT_SOLVE_SECONDS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        ArrayList<File> paths = new ArrayList<File>();
+        try {
+            for (String arg : args) {
+                if (arg.equals("--solve")) {
+                    solve = true;
+                } else if (arg.startsWith("--time=")) {
+                    solveSeconds = Long.parseLong(arg.substring("--time=".length()));
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else {
+                    paths.add(new File(arg));
+                }
+            }
+            if (paths.isEmpty() || solveSeconds <= 0 || threads <= 0) {
+                throw new IllegalArgumentException("Nothing to check");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java application.LevelValidator [--solve] [--time=SECONDS] [--threads=N] PATH...");
+            System.exit(2);
+        }
+
+        LevelValidator validator = new LevelValidator(solve, solveSeconds * 1000);
+        ArrayList<LevelSource> levels = new ArrayList<LevelSource>();
+        int unreadable = 0;
+        for (File path : paths) {
+            unreadable += validator.addLevels(path, levels, System.out);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(validator.new CheckTask(levels, 0, levels.size()));
+        } finally {
+            pool.shutdown();
+        }
+
+        int invalid = unreadable;
+        for (LevelSource level : levels) {
+            System.out.println(level.report);
+            if (!level.valid) {
+                invalid++;
+            }
+        }
+        System.out.flush();
+        System.err.println("Checked " + (levels.size() + unreadable) + " levels, " + invalid + " invalid");
+        System.exit(invalid == 0 ? 0 : 1);
+    }
+
+    /**
+     * Finds the levels at a path. Packs are opened here, so a pack that
+     * can't be opened at all is reported right away as a single bad entry.
+     *
+     * @return How many bad entries were reported.
+     */
+    private int addLevels(File path, ArrayList<LevelSource> levels, PrintStream out) {
+        if (path.isDirectory()) {
+            File[] files = path.listFiles();
+            if (files == null) {
+                out.println(report(path.getPath(), false, "Can't list directory", null));
+                return 1;
+            }
+            Arrays.sort(files);
+            int bad = 0;
+            for (File file : files) {
+                String name = file.getName();
+                if (file.isFile() && (name.endsWith(LEVEL_EXTENSION) || name.endsWith(PACK_EXTENSION))) {
+                    bad += addLevels(file, levels, out);
+                }
+            }
+            return bad;
+        }
+        if (path.getName().endsWith(PACK_EXTENSION)) {
+            LevelPack pack;
+            try {
+                pack = new LevelPack(path);
+            } catch (IOException e) {
+                out.println(report(path.getPath(), false, e.getMessage(), null));
+                return 1;
+            }
+            for (int i = 0; i < pack.getNumLevels(); i++) {
+                LevelSource level = new LevelSource();
+                level.file = path;
+                level.pack = pack;
+                level.packIndex = i;
+                levels.add(level);
+            }
+            return 0;
+        }
+        LevelSource level = new LevelSource();
+        level.file = path;
+        levels.add(level);
+        return 0;
+    }
+
+    /**
+     * Checks a run of levels, splitting it in half until each task has a
+     * single level, so idle threads can steal whatever's left.
+     */
+    private class CheckTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<LevelSource> levels;
+        private final int start;
+        private final int end;
+
+        CheckTask(ArrayList<LevelSource> initLevels, int initStart, int initEnd) {
+            levels = initLevels;
+            start = initStart;
+            end = initEnd;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= 1) {
+                if (start < end) {
+                    check(levels.get(start));
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new CheckTask(levels, start, middle), new CheckTask(levels, middle, end));
+        }
+    }
+
+    /**
+     * Checks one level and fills in its report.
+     */
+    private void check(LevelSource source) {
+        int[][] levelData;
+        String error;
+        try {
+            if (source.pack == null) {
+                levelData = readSokFile(source.file);
+            } else {
+                levelData = source.pack.readLevel(source.packIndex);
+            }
+            error = findProblem(levelData);
+        } catch (IOException e) {
+            levelData = null;
+            error = e.getMessage();
+        }
+        SolverResult result = null;
+        if (error == null && solve) {
+            result = solvers.get().solve(new Level(levelData));
+            if (result.getStatus() != SolverResult.Status.SOLVED) {
+                error = "solver: " + result.getStatus();
+            }
+        }
+        source.valid = error == null;
+        source.report = report(source.getName(), source.valid, error, result);
+    }
+
+    /**
+     * Reads a .sok file, making sure its header agrees with its size.
+     */
+    private static int[][] readSokFile(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buffer.capacity() < SOK_HEADER_SIZE) {
+            throw new IOException("File is too short for a header");
+        }
+        int cols = buffer.getInt();
+        int rows = buffer.getInt();
+        if (cols <= 0 || rows <= 0) {
+            throw new IOException("Header gives a size of " + cols + "x" + rows);
+        }
+        long expected = SOK_HEADER_SIZE + 4L * cols * rows;
+        if (buffer.capacity() != expected) {
+            throw new IOException("Header gives a size of " + cols + "x" + rows + ", which needs "
+                    + expected + " bytes, but the file has " + buffer.capacity());
+        }
+        int[][] levelData = new int[cols][rows];
+        for (int i = 0; i < cols; i++) {
+            for (int j = 0; j < rows; j++) {
+                levelData[i][j] = buffer.getInt();
+            }
+        }
+        return levelData;
+    }
+
+    /**
+     * Looks for anything that would make a level unplayable.
+     *
+     * @param levelData The cell values indexed by [column][row].
+     *
+     * @return What's wrong with the level, or null if nothing is.
+     */
+    public static String findProblem(int[][] levelData) {
+        int cols = levelData.length;
+        int rows = levelData[0].length;
+        int players = 0;
+        int boxes = 0;
+        int goals = 0;
+        int playerCol = -1;
+        int playerRow = -1;
+        for (int i = 0; i < cols; i++) {
+            for (int j = 0; j < rows; j++) {
+                int value = levelData[i][j];
+                if (value < 0 || value > MAX_CELL_VALUE) {
+                    return "Unknown cell value " + value + " at (" + i + ", " + j + ")";
+                }
+                if (value == GameState.PLAYER || value == GameState.PLAYER_ON_GOAL) {
+                    players++;
+                    playerCol = i;
+                    playerRow = j;
+                }
+                if (value == GameState.BOX || value == GameState.BOX_ON_GOAL) {
+                    boxes++;
+                }
+                if (value == GameState.GOAL || value == GameState.BOX_ON_GOAL || value == GameState.PLAYER_ON_GOAL) {
+                    goals++;
+                }
+            }
+        }
+        if (players != 1) {
+            return "Level has " + players + " players";
+        }
+        if (boxes == 0 || boxes != goals) {
+            return "Level has " + boxes + " boxes and " + goals + " goals";
+        }
+
+        // WALK OUT FROM THE PLAYER THROUGH ANYTHING BUT WALLS. IF THAT
+        // GETS US TO THE EDGE OF THE GRID, THE WALLS HAVE A GAP
+        boolean[] reached = new boolean[cols * rows];
+        int[] queue = new int[cols * rows];
+        int head = 0;
+        int tail = 0;
+        reached[playerCol * rows + playerRow] = true;
+        queue[tail++] = playerCol * rows + playerRow;
+        while (head < tail) {
+            int cell = queue[head++];
+            int col = cell / rows;
+            int row = cell % rows;
+            if (col == 0 || col == cols - 1 || row == 0 || row == rows - 1) {
+                return "Level isn't enclosed by walls at (" + col + ", " + row + ")";
+            }
+            int[] next = { cell - rows, cell + rows, cell - 1, cell + 1 };
+            for (int n : next) {
+                if (!reached[n] && levelData[n / rows][n % rows] != GameState.WALL) {
+                    reached[n] = true;
+                    queue[tail++] = n;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes one line of the report as a JSON object.
+     */
+    private static String report(String name, boolean valid, String error, SolverResult result) {
+        StringBuilder line = new StringBuilder();
+        line.append("{\"level\":");
+        appendString(line, name);
+        line.append(",\"valid\":").append(valid);
+        if (error != null) {
+            line.append(",\"error\":");
+            appendString(line, error);
+        }
+        if (result != null) {
+            line.append(",\"solver\":{\"status\":\"").append(result.getStatus()).append('"');
+            if (result.isSolved()) {
+                line.append(",\"pushes\":").append(result.getNumPushes());
+                line.append(",\"moves\":").append(result.getSolution().length());
+            }
+            line.append(",\"nodes\":").append(result.getNodesSearched());
+            line.append(",\"millis\":").append(result.getElapsedMillis());
+            line.append('}');
+        }
+        line.append('}');
+        return line.toString();
+    }
+
+    private static void appendString(StringBuilder line, String text) {
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < ' ') {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+}
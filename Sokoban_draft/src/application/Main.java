@@ -14,6 +14,8 @@ public class Main extends Application {
     static String PROPERTIES_SCHEMA_FILE_NAME = "properties_schema.xsd";
     static String DATA_PATH = "./data/";
 
+    private SokobanUI root;
+
     @Override
     public void start(Stage primaryStage) {
         try {
@@ -31,7 +33,7 @@ public class Main extends Application {
             String title = props.getProperty(SokobanPropertyType.SPLASH_SCREEN_TITLE_TEXT);
             primaryStage.setTitle(title);
 
-            SokobanUI root = new SokobanUI();
+            root = new SokobanUI();
             BorderPane mainPane = root.GetMainPane();
             root.SetStage(primaryStage);
 
@@ -43,6 +45,17 @@ public class Main extends Application {
         }
     }
 
+    /**
+     * Called by JavaFX when the application is closing. Makes sure any game
+     * results still being written reach the disk.
+     */
+    @Override
+    public void stop() {
+        if (root != null) {
+            root.getFileLoader().closeStats();
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
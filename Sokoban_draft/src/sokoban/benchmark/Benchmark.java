@@ -0,0 +1,50 @@
+package sokoban.benchmark;
+
+/**
+ * Benchmark is one operation to be timed by the BenchmarkRunner. Anything
+ * the operation needs is made in setUp, so only run itself is measured.
+ */
+public abstract class Benchmark {
+
+    private final String name;
+
+    /**
+     * Constructs a benchmark.
+     *
+     * @param initName The name the benchmark is reported and picked by.
+     */
+    public Benchmark(String initName) {
+        name = initName;
+    }
+
+    // ACCESSOR METHODS
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets everything ready before any timing starts.
+     *
+     * @throws Exception If the benchmark can't be set up.
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Performs the operation being measured once.
+     *
+     * @return Some value that depends on the work done, which the runner
+     * keeps so the JIT compiler can't decide the work isn't needed.
+     *
+     * @throws Exception If the operation fails.
+     */
+    public abstract long run() throws Exception;
+
+    /**
+     * Cleans up once timing is done.
+     *
+     * @throws Exception If cleaning up fails.
+     */
+    public void tearDown() throws Exception {
+    }
+}
@@ -0,0 +1,227 @@
+package sokoban.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * BenchmarkRunner times Benchmarks the same way a JMH run in average time
+ * mode with the GC profiler would. Each benchmark first runs for a number of
+ * warmup iterations, so the JIT compiler has done its work, and then for a
+ * number of measured iterations of a fixed length. The operation is called
+ * in batches sized so that reading the clock costs next to nothing.
+ *
+ * Along with the time per operation, the runner reports how many bytes each
+ * operation allocated, read from the JVM's per-thread allocation counter,
+ * and how many garbage collections ran while measuring.
+ */
+public class BenchmarkRunner {
+
+    // AIM FOR BATCHES OF ABOUT THIS LONG BETWEEN CLOCK READINGS
+    private static final long BATCH_NANOS = 1000 * 1000;
+
+    private final int warmupIterations;
+    private final int measuredIterations;
+    private final long iterationNanos;
+
+    // THE JVM'S ALLOCATION COUNTER, OR null IF THIS JVM DOESN'T HAVE ONE
+    private final com.sun.management.ThreadMXBean allocationCounter;
+
+    // RESULTS OF THE OPERATIONS, KEPT SO THEY AREN'T OPTIMIZED AWAY
+    private volatile long sink;
+
+    /**
+     * Constructs a runner.
+     *
+     * @param initWarmupIterations How many iterations to run untimed first.
+     *
+     * @param initMeasuredIterations How many iterations to time.
+     *
+     * @param initIterationMillis How long each iteration lasts.
+     */
+    public BenchmarkRunner(int initWarmupIterations, int initMeasuredIterations, long initIterationMillis) {
+        warmupIterations = initWarmupIterations;
+        measuredIterations = initMeasuredIterations;
+        iterationNanos = initIterationMillis * 1000 * 1000;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            allocationCounter = (com.sun.management.ThreadMXBean) threads;
+            allocationCounter.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            allocationCounter = null;
+        }
+    }
+
+    /**
+     * Sets up, times and tears down a benchmark.
+     *
+     * @param benchmark The benchmark to run.
+     *
+     * @return The measurements.
+     *
+     * @throws Exception If the benchmark fails.
+     */
+    public Result run(Benchmark benchmark) throws Exception {
+        benchmark.setUp();
+        try {
+            // WARM UP, GROWING THE BATCH UNTIL ONE TAKES LONG ENOUGH
+            long batchSize = 1;
+            for (int i = 0; i < warmupIterations; i++) {
+                long end = System.nanoTime() + iterationNanos;
+                while (true) {
+                    long start = System.nanoTime();
+                    runBatch(benchmark, batchSize);
+                    long now = System.nanoTime();
+                    if (now - start < BATCH_NANOS / 2 && batchSize < Integer.MAX_VALUE) {
+                        batchSize *= 2;
+                    }
+                    if (now >= end) {
+                        break;
+                    }
+                }
+            }
+
+            double[] nanosPerOp = new double[measuredIterations];
+            long totalOps = 0;
+            long totalNanos = 0;
+            long gcCountBefore = gcCount();
+            long gcMillisBefore = gcMillis();
+            long allocatedBefore = allocatedBytes();
+            for (int i = 0; i < measuredIterations; i++) {
+                long ops = 0;
+                long start = System.nanoTime();
+                long end = start + iterationNanos;
+                long now;
+                do {
+                    runBatch(benchmark, batchSize);
+                    ops += batchSize;
+                    now = System.nanoTime();
+                } while (now < end);
+                nanosPerOp[i] = (double) (now - start) / ops;
+                totalOps += ops;
+                totalNanos += now - start;
+            }
+            long allocated = allocatedBytes() - allocatedBefore;
+            long gcs = gcCount() - gcCountBefore;
+            long gcMillis = gcMillis() - gcMillisBefore;
+
+            double bytesPerOp = allocationCounter == null ? Double.NaN : (double) allocated / totalOps;
+            double allocMBPerSec = allocationCounter == null ? Double.NaN
+                    : allocated / (totalNanos / 1e9) / (1024 * 1024);
+            return new Result(benchmark.getName(), mean(nanosPerOp), stdDev(nanosPerOp), bytesPerOp,
+                    allocMBPerSec, gcs, gcMillis);
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    private void runBatch(Benchmark benchmark, long batchSize) throws Exception {
+        long result = 0;
+        for (long i = 0; i < batchSize; i++) {
+            result += benchmark.run();
+        }
+        sink = result;
+    }
+
+    private long allocatedBytes() {
+        if (allocationCounter == null) {
+            return 0;
+        }
+        return allocationCounter.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static double stdDev(double[] values) {
+        if (values.length < 2) {
+            return 0;
+        }
+        double mean = mean(values);
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / (values.length - 1));
+    }
+
+    /**
+     * The measurements of one benchmark.
+     */
+    public static class Result {
+
+        private final String name;
+        private final double nanosPerOp;
+        private final double nanosPerOpError;
+        private final double bytesPerOp;
+        private final double allocMBPerSec;
+        private final long gcCount;
+        private final long gcMillis;
+
+        public Result(String initName, double initNanosPerOp, double initNanosPerOpError,
+                double initBytesPerOp, double initAllocMBPerSec, long initGcCount, long initGcMillis) {
+            name = initName;
+            nanosPerOp = initNanosPerOp;
+            nanosPerOpError = initNanosPerOpError;
+            bytesPerOp = initBytesPerOp;
+            allocMBPerSec = initAllocMBPerSec;
+            gcCount = initGcCount;
+            gcMillis = initGcMillis;
+        }
+
+        // ACCESSOR METHODS
+        public String getName() {
+            return name;
+        }
+
+        public double getNanosPerOp() {
+            return nanosPerOp;
+        }
+
+        public double getNanosPerOpError() {
+            return nanosPerOpError;
+        }
+
+        /**
+         * @return Bytes allocated per operation, or NaN if the JVM can't
+         * tell us.
+         */
+        public double getBytesPerOp() {
+            return bytesPerOp;
+        }
+
+        public double getAllocMBPerSec() {
+            return allocMBPerSec;
+        }
+
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        public long getGcMillis() {
+            return gcMillis;
+        }
+    }
+}
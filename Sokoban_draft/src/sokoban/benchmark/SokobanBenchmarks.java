@@ -0,0 +1,402 @@
+package sokoban.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+
+import application.Main.SokobanPropertyType;
+import properties_manager.PropertiesManager;
+import sokoban.engine.DeadlockDetector;
+import sokoban.engine.Direction;
+import sokoban.engine.GameState;
+import sokoban.engine.Level;
+import sokoban.engine.MoveJournal;
+import sokoban.engine.MoveResult;
+import sokoban.file.LevelPack;
+import sokoban.file.SokobanFileLoader;
+import sokoban.file.StatsJournal;
+import sokoban.game.StatsAggregator;
+import sokoban.solver.SokobanSolver;
+
+/**
+ * SokobanBenchmarks measures the paths the game spends its time on, so a
+ * change meant to speed one of them up can be checked against a baseline.
+ * It needs no display, and is run from the Sokoban_draft directory like the
+ * game, so it finds the data directory:
+ *
+ * java sokoban.benchmark.SokobanBenchmarks [--warmup=N] [--iterations=N]
+ * [--millis=N] [--save=FILE] [--baseline=FILE] [NAME_PATTERN]
+ *
+ * Only benchmarks whose names contain a match for NAME_PATTERN are run.
+ * --save writes the results to a CSV file, and --baseline compares the
+ * results against a file saved earlier.
+ */
+public class SokobanBenchmarks {
+
+    private static final String DATA_PATH = "data/";
+
+    // THE LEVEL MOST OF THE BENCHMARKS PLAY, THE BIGGEST WE SHIP
+    private static final String LEVEL_FILE = "level7.sok";
+
+    // HOW MANY GAMES THE STATS BENCHMARKS START WITH
+    private static final int STATS_HISTORY_SIZE = 10000;
+    private static final int NUM_LEVELS = 7;
+
+    private static final int DEFAULT_WARMUP_ITERATIONS = 5;
+    private static final int DEFAULT_MEASURED_ITERATIONS = 5;
+    private static final long DEFAULT_ITERATION_MILLIS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int warmup = DEFAULT_WARMUP_ITERATIONS;
+        int iterations = DEFAULT_MEASURED_ITERATIONS;
+        long millis = DEFAULT_ITERATION_MILLIS;
+        File saveFile = null;
+        File baselineFile = null;
+        Pattern filter = null;
+        for (String arg : args) {
+            if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--iterations=")) {
+                iterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            } else if (arg.startsWith("--millis=")) {
+                millis = Long.parseLong(arg.substring("--millis=".length()));
+            } else if (arg.startsWith("--save=")) {
+                saveFile = new File(arg.substring("--save=".length()));
+            } else if (arg.startsWith("--baseline=")) {
+                baselineFile = new File(arg.substring("--baseline=".length()));
+            } else {
+                filter = Pattern.compile(arg);
+            }
+        }
+        HashMap<String, double[]> baseline = baselineFile == null ? null : readResults(baselineFile);
+
+        BenchmarkRunner runner = new BenchmarkRunner(warmup, Math.max(1, iterations), millis);
+        ArrayList<BenchmarkRunner.Result> results = new ArrayList<BenchmarkRunner.Result>();
+        System.out.println(String.format("%-24s %14s %12s %12s %12s %8s", "Benchmark", "ns/op", "error",
+                "B/op", "alloc MB/s", "gc"));
+        for (Benchmark benchmark : makeBenchmarks()) {
+            if (filter != null && !filter.matcher(benchmark.getName()).find()) {
+                continue;
+            }
+            BenchmarkRunner.Result result = runner.run(benchmark);
+            results.add(result);
+            String line = String.format("%-24s %14.1f %12.1f %12.1f %12.1f %8d", result.getName(),
+                    result.getNanosPerOp(), result.getNanosPerOpError(), result.getBytesPerOp(),
+                    result.getAllocMBPerSec(), result.getGcCount());
+            double[] before = baseline == null ? null : baseline.get(result.getName());
+            if (before != null) {
+                line += String.format("   time %+.1f%%, alloc %+.1f%%",
+                        percentChange(before[0], result.getNanosPerOp()),
+                        percentChange(before[1], result.getBytesPerOp()));
+            }
+            System.out.println(line);
+        }
+        if (saveFile != null) {
+            writeResults(saveFile, results);
+        }
+    }
+
+    /**
+     * Makes every benchmark, in the order they're run.
+     */
+    private static ArrayList<Benchmark> makeBenchmarks() {
+        ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+        // READING A LEVEL FILE, AS SokobanFileLoader.loadLevel DOES
+        benchmarks.add(new Benchmark("loadLevel.sok") {
+            private File file = new File(DATA_PATH + LEVEL_FILE);
+
+            @Override
+            public long run() throws Exception {
+                return SokobanFileLoader.readLevel(file).length;
+            }
+        });
+
+        // READING A LEVEL OUT OF A PACK
+        benchmarks.add(new Benchmark("loadLevel.pack") {
+            private File packFile;
+            private LevelPack pack;
+
+            @Override
+            public void setUp() throws Exception {
+                packFile = File.createTempFile("bench", ".sokpack");
+                int[][] levelData = SokobanFileLoader.readLevel(new File(DATA_PATH + LEVEL_FILE));
+                LevelPack.write(packFile, Arrays.asList(levelData, levelData));
+                pack = new LevelPack(packFile);
+            }
+
+            @Override
+            public long run() throws Exception {
+                return pack.readLevel(1).length;
+            }
+
+            @Override
+            public void tearDown() {
+                packFile.delete();
+            }
+        });
+
+        // PLAYING THROUGH A WHOLE SOLUTION AND UNDOING IT ALL AGAIN, WHICH
+        // COVERS STEPS, PUSHES AND UNDOS
+        benchmarks.add(new Benchmark("moveAndUndo") {
+            private GameState state;
+            private MoveJournal journal = new MoveJournal();
+            private Direction[] moves;
+
+            @Override
+            public void setUp() throws Exception {
+                state = new GameState(loadLevel());
+                moves = solutionMoves();
+            }
+
+            @Override
+            public long run() {
+                long pushes = 0;
+                for (Direction dir : moves) {
+                    int from = state.getPlayer();
+                    MoveResult result = state.tryMove(dir);
+                    journal.record(from, dir, result);
+                    if (result == MoveResult.PUSHED) {
+                        pushes++;
+                    }
+                }
+                while (journal.undo(state) != null) {
+                    pushes++;
+                }
+                return pushes;
+            }
+        });
+
+        // WHAT SokobanUI.checkWin AND checkLose ASK THE ENGINE AFTER EACH MOVE,
+        // FOR EVERY POSITION ALONG THE SOLUTION
+        benchmarks.add(new Benchmark("checkWin") {
+            private GameState[] positions;
+
+            @Override
+            public void setUp() throws Exception {
+                positions = solutionPositions();
+            }
+
+            @Override
+            public long run() {
+                long solved = 0;
+                for (GameState position : positions) {
+                    if (position.isSolved()) {
+                        solved++;
+                    }
+                }
+                return solved;
+            }
+        });
+        benchmarks.add(new Benchmark("checkLose") {
+            private GameState[] positions;
+            private DeadlockDetector detector;
+
+            @Override
+            public void setUp() throws Exception {
+                positions = solutionPositions();
+                detector = new DeadlockDetector(positions[0].getLevel());
+            }
+
+            @Override
+            public long run() {
+                long lost = 0;
+                for (GameState position : positions) {
+                    if (detector.hasDeadlock(position.getBoxes())) {
+                        lost++;
+                    }
+                }
+                return lost;
+            }
+        });
+
+        // EVERYTHING SokobanFileLoader.addToStats SETS OFF FOR ONE RESULT,
+        // WITH A 10K GAME HISTORY ALREADY IN THE JOURNAL: THE TOTALS ON THE
+        // JAVAFX THREAD, THEN THE RECORD AND SYNC ON THE WRITER THREAD. IT'S
+        // RUN ALL ON ONE THREAD HERE, SINCE QUEUEING MILLIONS OF RESULTS ON
+        // THE WRITER WOULD ONLY MEASURE HOW FAR BEHIND IT FELL
+        benchmarks.add(new Benchmark("addToStats") {
+            private File journalFile;
+            private StatsJournal journal;
+            private StatsAggregator stats;
+            private int game;
+
+            @Override
+            public void setUp() throws Exception {
+                journalFile = makeHistory();
+                journal = new StatsJournal(journalFile, NUM_LEVELS);
+                stats = new StatsAggregator(NUM_LEVELS);
+                StatsAggregator saved = journal.getStats();
+                for (int level = 1; level <= NUM_LEVELS; level++) {
+                    stats.restore(level, saved.getPlayed(level), saved.getWon(level), saved.getFastest(level));
+                }
+            }
+
+            @Override
+            public long run() throws Exception {
+                game++;
+                int level = game % NUM_LEVELS + 1;
+                int time = game % 3 == 0 ? -1 : game % 100;
+                stats.record(level, time);
+                journal.record(level, time);
+                journal.force();
+                return stats.getPlayed(level);
+            }
+
+            @Override
+            public void tearDown() throws Exception {
+                journal.close();
+                journalFile.delete();
+            }
+        });
+
+        // JUST THE JOURNAL RECORD, WITHOUT THE SYNC
+        benchmarks.add(new Benchmark("statsJournal.record") {
+            private File journalFile;
+            private StatsJournal journal;
+            private int game;
+
+            @Override
+            public void setUp() throws Exception {
+                journalFile = makeHistory();
+                journal = new StatsJournal(journalFile, NUM_LEVELS);
+            }
+
+            @Override
+            public long run() throws Exception {
+                game++;
+                journal.record(game % NUM_LEVELS + 1, game % 3 == 0 ? -1 : game % 100);
+                return journal.getNumRecords();
+            }
+
+            @Override
+            public void tearDown() throws Exception {
+                journal.close();
+                journalFile.delete();
+            }
+        });
+
+        // LOADING AND VALIDATING THE GAME'S PROPERTIES
+        benchmarks.add(new Benchmark("loadProperties") {
+            private PropertiesManager props;
+
+            @Override
+            public void setUp() {
+                props = PropertiesManager.getPropertiesManager();
+                props.addProperty(PropertiesManager.DATA_PATH_PROPERTY, DATA_PATH);
+            }
+
+            @Override
+            public long run() throws Exception {
+                props.loadProperties("properties.xml", "properties_schema.xsd");
+                return props.getProperty(PropertiesManager.DATA_PATH_PROPERTY).length();
+            }
+        });
+
+        // THE LOOKUPS THE ERROR AND EXIT DIALOGS MAKE EACH TIME THEY OPEN
+        benchmarks.add(new Benchmark("getProperty") {
+            private PropertiesManager props;
+
+            @Override
+            public void setUp() throws Exception {
+                props = PropertiesManager.getPropertiesManager();
+                props.addProperty(PropertiesManager.DATA_PATH_PROPERTY, DATA_PATH);
+                props.loadProperties("properties.xml", "properties_schema.xsd");
+            }
+
+            @Override
+            public long run() {
+                return props.getProperty(SokobanPropertyType.ERROR_NO_MORE_UNDOS).length()
+                        + props.getProperty(SokobanPropertyType.DEFAULT_YES_TEXT).length()
+                        + props.getProperty(SokobanPropertyType.DEFAULT_NO_TEXT).length()
+                        + props.getProperty(SokobanPropertyType.DEFAULT_EXIT_TEXT).length();
+            }
+        });
+        return benchmarks;
+    }
+
+    private static int[][] loadLevel() throws IOException {
+        return SokobanFileLoader.readLevel(new File(DATA_PATH + LEVEL_FILE));
+    }
+
+    /**
+     * Solves the benchmark level, to get a realistic run of moves.
+     */
+    private static Direction[] solutionMoves() throws IOException {
+        String solution = new SokobanSolver().solve(new Level(loadLevel())).getSolution();
+        Direction[] moves = new Direction[solution.length()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = Direction.values()["lrud".indexOf(Character.toLowerCase(solution.charAt(i)))];
+        }
+        return moves;
+    }
+
+    /**
+     * Every position along the solution to the benchmark level.
+     */
+    private static GameState[] solutionPositions() throws IOException {
+        Direction[] moves = solutionMoves();
+        GameState[] positions = new GameState[moves.length + 1];
+        positions[0] = new GameState(loadLevel());
+        for (int i = 0; i < moves.length; i++) {
+            positions[i + 1] = new GameState(positions[i]);
+            positions[i + 1].tryMove(moves[i]);
+        }
+        return positions;
+    }
+
+    /**
+     * Writes a journal of made up games to a temporary file.
+     */
+    private static File makeHistory() throws IOException {
+        File file = File.createTempFile("bench", ".sokjournal");
+        file.delete();
+        StatsJournal journal = new StatsJournal(file, NUM_LEVELS);
+        for (int game = 0; game < STATS_HISTORY_SIZE; game++) {
+            journal.record(game % NUM_LEVELS + 1, game % 3 == 0 ? -1 : game % 100);
+        }
+        journal.close();
+        return file;
+    }
+
+    private static double percentChange(double before, double after) {
+        return before == 0 ? 0 : (after - before) / before * 100;
+    }
+
+    private static void writeResults(File file, ArrayList<BenchmarkRunner.Result> results) throws IOException {
+        PrintWriter out = new PrintWriter(file);
+        try {
+            out.println("benchmark,nsPerOp,bytesPerOp");
+            for (BenchmarkRunner.Result result : results) {
+                out.println(result.getName() + "," + result.getNanosPerOp() + "," + result.getBytesPerOp());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static HashMap<String, double[]> readResults(File file) throws IOException {
+        HashMap<String, double[]> results = new HashMap<String, double[]>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            // SKIP THE HEADER
+            String line = in.readLine();
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length == 3) {
+                    results.put(fields[0], new double[] {
+                            Double.parseDouble(fields[1]), Double.parseDouble(fields[2]) });
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return results;
+    }
+}
@@ -0,0 +1,183 @@
+package sokoban.engine;
+
+/**
+ * DeadlockDetector finds box positions from which a level can no longer be
+ * solved. Two kinds of deadlock are recognized:
+ *
+ * Dead squares are cells from which a box can never be pushed onto any goal,
+ * even with no other boxes around. These only depend on the walls and goals,
+ * so they are worked out once per level by pulling boxes backwards from every
+ * goal and marking every cell they can't be pulled to.
+ *
+ * Freeze deadlocks happen when a box off its goal can't be pushed along
+ * either axis, because each way is blocked by walls, dead squares or other
+ * boxes that are themselves stuck. Since a push can only freeze the box that
+ * was pushed and the boxes touching it, only that neighborhood is looked at.
+ */
+public class DeadlockDetector {
+
+    // RETURNED BY freeze WHEN THE BOX CAN STILL MOVE
+    private static final int NOT_FROZEN = -1;
+
+    private final Level level;
+
+    // ONE BIT PER CELL, SET WHERE A BOX CAN NEVER REACH A GOAL
+    private final long[] deadSquares;
+
+    // BOXES BEING CHECKED FURTHER UP THE freeze RECURSION, WHICH ARE
+    // TREATED AS WALLS WHILE THEIR NEIGHBORS ARE CHECKED
+    private final long[] checking;
+
+    /**
+     * Works out the dead squares for a level.
+     *
+     * @param initLevel The level to check positions of.
+     */
+    public DeadlockDetector(Level initLevel) {
+        level = initLevel;
+        int numCells = level.getNumCells();
+        checking = Level.newBitSet(numCells);
+
+        // PULL FROM ALL THE GOALS AT ONCE, ANYTHING NOT REACHED IS DEAD
+        long[] live = Level.newBitSet(numCells);
+        int[] queue = new int[numCells];
+        int head = 0;
+        int tail = 0;
+        for (int cell = 0; cell < numCells; cell++) {
+            if (level.isGoal(cell)) {
+                Level.set(live, cell);
+                queue[tail++] = cell;
+            }
+        }
+        while (head < tail) {
+            int box = queue[head++];
+            for (Direction dir : Direction.values()) {
+                // THE BOX COMES FROM THE dir SIDE, WITH THE PLAYER BEHIND IT
+                int from = level.neighbor(box, dir);
+                if (from < 0 || !level.isFloor(from) || Level.isSet(live, from)) {
+                    continue;
+                }
+                int playerAt = level.neighbor(from, dir);
+                if (playerAt >= 0 && level.isFloor(playerAt)) {
+                    Level.set(live, from);
+                    queue[tail++] = from;
+                }
+            }
+        }
+        deadSquares = Level.newBitSet(numCells);
+        for (int cell = 0; cell < numCells; cell++) {
+            if (level.isFloor(cell) && !Level.isSet(live, cell)) {
+                Level.set(deadSquares, cell);
+            }
+        }
+    }
+
+    // ACCESSOR METHODS
+    public Level getLevel() {
+        return level;
+    }
+
+    public boolean isDeadSquare(int cell) {
+        return Level.isSet(deadSquares, cell);
+    }
+
+    /**
+     * Tests whether a push that just left a box on boxCell has made the
+     * level unsolvable.
+     *
+     * @param boxes The box bitset after the push.
+     *
+     * @param boxCell The cell the box was pushed onto.
+     *
+     * @return true if the box is on a dead square or has frozen, along with
+     * the boxes next to it, with at least one of them off a goal.
+     */
+    public boolean isDeadlocked(long[] boxes, int boxCell) {
+        if (isDeadSquare(boxCell)) {
+            return true;
+        }
+        return freeze(boxes, boxCell) > 0;
+    }
+
+    /**
+     * Tests every box that is off its goal for a deadlock. This is for
+     * when we don't know which box moved last, like after a redo.
+     *
+     * @param boxes The box bitset to test.
+     *
+     * @return true if the level can no longer be solved.
+     */
+    public boolean hasDeadlock(long[] boxes) {
+        long[] goals = level.getGoals();
+        for (int i = 0; i < boxes.length; i++) {
+            long stray = boxes[i] & ~goals[i];
+            while (stray != 0) {
+                int cell = (i << 6) + Long.numberOfTrailingZeros(stray);
+                stray &= stray - 1;
+                if (isDeadlocked(boxes, cell)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the box on the cell can never be pushed again.
+     *
+     * @return NOT_FROZEN if it might still move, otherwise the number of
+     * boxes off their goals among it and the boxes holding it in place.
+     */
+    private int freeze(long[] boxes, int cell) {
+        Level.set(checking, cell);
+        int stray = level.isGoal(cell) ? 0 : 1;
+        int across = blocked(boxes, cell, Direction.LEFT);
+        int along = across == NOT_FROZEN ? NOT_FROZEN : blocked(boxes, cell, Direction.UP);
+        Level.clear(checking, cell);
+        if (along == NOT_FROZEN) {
+            return NOT_FROZEN;
+        }
+        return stray + across + along;
+    }
+
+    /**
+     * Checks whether the box on the cell can't be pushed along the axis of
+     * dir, either way.
+     *
+     * @return NOT_FROZEN if it can, otherwise the number of stray boxes
+     * found frozen while deciding that it can't.
+     */
+    private int blocked(long[] boxes, int cell, Direction dir) {
+        int one = level.neighbor(cell, dir);
+        int other = level.neighbor(cell, dir.opposite());
+        if (isSolid(one) || isSolid(other)) {
+            return 0;
+        }
+
+        // PUSHING EITHER WAY WOULD LEAVE THE BOX ON A DEAD SQUARE
+        if (isDeadSquare(one) && isDeadSquare(other)) {
+            return 0;
+        }
+
+        // A NEIGHBORING BOX THAT CAN'T MOVE EITHER STOPS THIS ONE
+        if (Level.isSet(boxes, one)) {
+            int stray = freeze(boxes, one);
+            if (stray != NOT_FROZEN) {
+                return stray;
+            }
+        }
+        if (Level.isSet(boxes, other)) {
+            int stray = freeze(boxes, other);
+            if (stray != NOT_FROZEN) {
+                return stray;
+            }
+        }
+        return NOT_FROZEN;
+    }
+
+    // WALLS, THE EDGE OF THE GRID AND BOXES ALREADY BEING CHECKED
+    // ALL STOP A BOX THE SAME WAY
+    private boolean isSolid(int cell) {
+        return cell < 0 || !level.isFloor(cell) || Level.isSet(checking, cell);
+    }
+}
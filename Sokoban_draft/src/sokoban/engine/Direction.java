@@ -0,0 +1,56 @@
+package sokoban.engine;
+
+/**
+ * The four directions the player may move in. Each direction knows how it
+ * changes a (column, row) grid position, where columns grow to the right and
+ * rows grow downwards, just like the level data arrays.
+ */
+public enum Direction {
+
+    LEFT(-1, 0), RIGHT(1, 0), UP(0, -1), DOWN(0, 1);
+
+    // HOW A STEP IN THIS DIRECTION CHANGES THE COLUMN AND ROW
+    private final int colDelta;
+    private final int rowDelta;
+
+    Direction(int initColDelta, int initRowDelta) {
+        colDelta = initColDelta;
+        rowDelta = initRowDelta;
+    }
+
+    /**
+     * Accessor method for the direction pointing the other way.
+     *
+     * @return RIGHT for LEFT, DOWN for UP and so on.
+     */
+    public Direction opposite() {
+        switch (this) {
+            case LEFT:
+                return RIGHT;
+            case RIGHT:
+                return LEFT;
+            case UP:
+                return DOWN;
+            default:
+                return UP;
+        }
+    }
+
+    /**
+     * Accessor method for the column change of a single step.
+     *
+     * @return -1, 0 or 1 depending on the direction.
+     */
+    public int getColDelta() {
+        return colDelta;
+    }
+
+    /**
+     * Accessor method for the row change of a single step.
+     *
+     * @return -1, 0 or 1 depending on the direction.
+     */
+    public int getRowDelta() {
+        return rowDelta;
+    }
+}
@@ -0,0 +1,312 @@
+package sokoban.engine;
+
+/**
+ * GameState holds the rules of Sokoban for a single level, independent of any
+ * user interface. The unchanging parts of the level live in a shared Level,
+ * while each GameState only owns a bitset of box positions and the cell the
+ * player is standing on, so lots of states can be kept in memory at once.
+ *
+ * Note that tryMove takes no locks, does no I/O and allocates nothing, so it
+ * may be called from the JavaFX thread as well as from batch jobs that want
+ * to simulate lots of moves.
+ */
+public class GameState {
+
+    // THESE ARE THE CELL VALUES USED BY THE LEVEL FILES, WHICH
+    // ARE THE SAME ONES THE LEVEL EDITOR WRITES
+    public static final int EMPTY = 0;
+    public static final int WALL = 1;
+    public static final int BOX = 2;
+    public static final int GOAL = 3;
+    public static final int PLAYER = 4;
+    public static final int FLOOR = 5;
+
+    // THE LEVEL EDITOR NEVER WRITES THESE, BUT LEVELS IMPORTED FROM
+    // OTHER FORMATS MAY START WITH A BOX OR THE PLAYER ON A GOAL
+    public static final int BOX_ON_GOAL = 6;
+    public static final int PLAYER_ON_GOAL = 7;
+
+    // THE WALLS, FLOOR AND GOALS
+    private final Level level;
+
+    // ONE BIT PER CELL, SET WHERE THERE IS A BOX
+    private final long[] boxes;
+
+    // THE CELL THE PLAYER IS STANDING ON
+    private int player;
+
+    // THE ZOBRIST HASH OF THE BOXES, KEPT UP TO DATE ONE PUSH AT A TIME
+    private long boxHash;
+
+    // HOW MANY BOXES ARE SITTING ON GOALS, ALSO KEPT UP TO DATE ONE PUSH
+    // AT A TIME, SO CHECKING FOR A WIN NEVER HAS TO LOOK AT THE BOARD
+    private int boxesOnGoals;
+
+    // TOLD WHEN boxesOnGoals REACHES THE NUMBER OF BOXES, MAY BE null
+    private GoalListener goalListener;
+
+    /**
+     * Constructs the state for a level as it was loaded from a level file.
+     * The levelData argument is copied, so the caller may keep using it.
+     *
+     * @param levelData The cell values indexed by [column][row].
+     */
+    public GameState(int[][] levelData) {
+        this(new Level(levelData));
+    }
+
+    /**
+     * Constructs the starting state for a level.
+     *
+     * @param initLevel The level to play.
+     */
+    public GameState(Level initLevel) {
+        level = initLevel;
+        boxes = level.copyInitialBoxes();
+        player = level.getInitialPlayer();
+        boxHash = level.getZobristKeys().hashBoxes(boxes);
+        boxesOnGoals = level.getInitialBoxesOnGoals();
+    }
+
+    /**
+     * Copy constructor, useful for keeping snapshots of a state. The copy
+     * shares the Level with the original.
+     *
+     * @param other The state to copy.
+     */
+    public GameState(GameState other) {
+        level = other.level;
+        boxes = other.boxes.clone();
+        player = other.player;
+        boxHash = other.boxHash;
+        boxesOnGoals = other.boxesOnGoals;
+    }
+
+    // ACCESSOR METHODS
+    public Level getLevel() {
+        return level;
+    }
+
+    public int getNumCols() {
+        return level.getNumCols();
+    }
+
+    public int getNumRows() {
+        return level.getNumRows();
+    }
+
+    public int getPlayer() {
+        return player;
+    }
+
+    public int getPlayerCol() {
+        return level.colOf(player);
+    }
+
+    public int getPlayerRow() {
+        return level.rowOf(player);
+    }
+
+    public boolean hasBox(int cell) {
+        return Level.isSet(boxes, cell);
+    }
+
+    public int getBoxesOnGoals() {
+        return boxesOnGoals;
+    }
+
+    // MUTATOR METHODS
+    /**
+     * Mutator method for the listener told when the level gets solved.
+     * Copies made with the copy constructor don't share it.
+     *
+     * @param initGoalListener The listener, or null for none.
+     */
+    public void setGoalListener(GoalListener initGoalListener) {
+        goalListener = initGoalListener;
+    }
+
+    /**
+     * Accessor method for the hash of the box positions alone.
+     *
+     * @return The Zobrist hash of the boxes.
+     */
+    public long getBoxHash() {
+        return boxHash;
+    }
+
+    /**
+     * Accessor method for the hash of the exact position, which is the
+     * same whenever the boxes and the player are on the same cells.
+     *
+     * @return The Zobrist hash of the boxes and the player.
+     */
+    public long getPositionHash() {
+        return boxHash ^ level.getZobristKeys().playerKey(player);
+    }
+
+    /**
+     * Accessor method for the hash of the position as the solver sees it,
+     * which is the same whenever the boxes are on the same cells and the
+     * player can walk to the same cells, wherever in there they stand.
+     *
+     * @return The Zobrist hash of the boxes and the player's region.
+     */
+    public long getRegionHash() {
+        // WALK OUT FROM THE PLAYER, FINDING THE SMALLEST CELL IN REACH,
+        // WHICH STANDS FOR THE WHOLE REGION
+        long[] reached = Level.newBitSet(level.getNumCells());
+        int[] queue = new int[level.getNumCells()];
+        int head = 0;
+        int tail = 0;
+        int smallest = player;
+        Level.set(reached, player);
+        queue[tail++] = player;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (Direction dir : Direction.values()) {
+                int next = level.neighbor(cell, dir);
+                if (next >= 0 && !Level.isSet(reached, next) && level.isFloor(next)
+                        && !Level.isSet(boxes, next)) {
+                    Level.set(reached, next);
+                    queue[tail++] = next;
+                    smallest = Math.min(smallest, next);
+                }
+            }
+        }
+        return boxHash ^ level.getZobristKeys().playerKey(smallest);
+    }
+
+    /**
+     * Accessor method for the box bitset. Callers must not change it.
+     *
+     * @return One bit per cell, set wherever there is a box.
+     */
+    public long[] getBoxes() {
+        return boxes;
+    }
+
+    /**
+     * Accessor method for the contents of a cell, using the same values as
+     * the level files. Cells outside of the level are reported as EMPTY.
+     *
+     * @param col The column of the cell.
+     *
+     * @param row The row of the cell.
+     *
+     * @return One of EMPTY, WALL, BOX, GOAL, PLAYER or FLOOR.
+     */
+    public int getCell(int col, int row) {
+        if (!level.isInside(col, row)) {
+            return EMPTY;
+        }
+        int cell = level.cellOf(col, row);
+        if (level.isWall(cell)) {
+            return WALL;
+        } else if (cell == player) {
+            return PLAYER;
+        } else if (hasBox(cell)) {
+            return BOX;
+        } else if (level.isGoal(cell)) {
+            return GOAL;
+        } else if (level.isFloor(cell)) {
+            return FLOOR;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Tests whether a cell is a goal, whether or not something is on it.
+     *
+     * @param col The column of the cell.
+     *
+     * @param row The row of the cell.
+     *
+     * @return true if a box needs to be pushed onto this cell.
+     */
+    public boolean isGoal(int col, int row) {
+        return level.isInside(col, row) && level.isGoal(level.cellOf(col, row));
+    }
+
+    /**
+     * Tests whether every box is sitting on a goal, using the running count
+     * of boxes on goals.
+     *
+     * @return true if the level has been solved.
+     */
+    public boolean isSolved() {
+        return boxesOnGoals == level.getNumBoxes();
+    }
+
+    /**
+     * Tries to move the player one cell in the dir direction, pushing a box
+     * if there is one in the way and the cell behind it is free.
+     *
+     * @param dir The direction to move in.
+     *
+     * @return BLOCKED if nothing changed, MOVED if the player stepped, or
+     * PUSHED if the player stepped and pushed a box.
+     */
+    public MoveResult tryMove(Direction dir) {
+        int to = level.neighbor(player, dir);
+        if (to < 0 || !level.isFloor(to)) {
+            return MoveResult.BLOCKED;
+        }
+
+        // A FREE CELL, SO JUST STEP
+        if (!hasBox(to)) {
+            player = to;
+            return MoveResult.MOVED;
+        }
+
+        // A BOX, SO SEE IF THE CELL BEHIND IT IS FREE
+        int boxTo = level.neighbor(to, dir);
+        if (boxTo < 0 || !level.isFloor(boxTo) || hasBox(boxTo)) {
+            return MoveResult.BLOCKED;
+        }
+        Level.clear(boxes, to);
+        Level.set(boxes, boxTo);
+        ZobristKeys keys = level.getZobristKeys();
+        boxHash ^= keys.boxKey(to) ^ keys.boxKey(boxTo);
+        player = to;
+        updateBoxesOnGoals(to, boxTo);
+        if (goalListener != null && isSolved()) {
+            goalListener.allBoxesOnGoals(this);
+        }
+        return MoveResult.PUSHED;
+    }
+
+    /**
+     * Runs a move backwards, used by the MoveJournal for undo. The player
+     * steps back to fromCell and, if the move was a push, pulls the box
+     * back along with it.
+     *
+     * @param fromCell The cell the player was on before the move.
+     *
+     * @param dir The direction the move was made in.
+     *
+     * @param pushed true if the move pushed a box.
+     */
+    void unmove(int fromCell, Direction dir, boolean pushed) {
+        if (pushed) {
+            int boxAt = level.neighbor(player, dir);
+            Level.clear(boxes, boxAt);
+            Level.set(boxes, player);
+            ZobristKeys keys = level.getZobristKeys();
+            boxHash ^= keys.boxKey(boxAt) ^ keys.boxKey(player);
+            updateBoxesOnGoals(boxAt, player);
+        }
+        player = fromCell;
+    }
+
+    // A BOX MOVED FROM ONE CELL TO THE OTHER, SO EACH END MAY
+    // HAVE TAKEN A BOX OFF A GOAL OR PUT ONE ON
+    private void updateBoxesOnGoals(int fromCell, int toCell) {
+        if (level.isGoal(fromCell)) {
+            boxesOnGoals--;
+        }
+        if (level.isGoal(toCell)) {
+            boxesOnGoals++;
+        }
+    }
+}
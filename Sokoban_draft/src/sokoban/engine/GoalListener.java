@@ -0,0 +1,16 @@
+package sokoban.engine;
+
+/**
+ * A GoalListener is told when a push puts the last box of a GameState onto a
+ * goal, so that whoever is playing can react to the win without checking the
+ * board after every move.
+ */
+public interface GoalListener {
+
+    /**
+     * Called right after the push that solved the level.
+     *
+     * @param state The state that is now solved.
+     */
+    void allBoxesOnGoals(GameState state);
+}
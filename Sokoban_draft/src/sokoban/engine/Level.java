@@ -0,0 +1,240 @@
+package sokoban.engine;
+
+/**
+ * Level stores the parts of a Sokoban level that never change while it is
+ * being played: its dimensions, its walls, its floor and its goals. These are
+ * kept as bitsets over a flat cell index, where the cell at (col, row) has the
+ * index col * numRows + row, which is the same order the level files use.
+ *
+ * A Level is immutable, so any number of GameState objects may share one.
+ */
+public class Level {
+
+    // NUMBER OF CELLS WE CAN PACK INTO ONE WORD OF A BITSET
+    private static final int WORD_SHIFT = 6;
+
+    // LEVEL DIMENSIONS
+    private final int numCols;
+    private final int numRows;
+    private final int numCells;
+
+    // ONE BIT PER CELL. THE FLOOR IS EVERY CELL THE PLAYER OR A BOX MAY
+    // EVER STAND ON, WHICH INCLUDES THE GOALS
+    private final long[] walls;
+    private final long[] floor;
+    private final long[] goals;
+    private final int numGoals;
+
+    // THE CELL REACHED BY STEPPING IN EACH DIRECTION FROM EACH CELL,
+    // INDEXED BY cell * 4 + direction.ordinal(), OR -1 IF THAT
+    // STEP WOULD LEAVE THE GRID
+    private final int[] neighbors;
+
+    // WHERE THINGS START
+    private final long[] initialBoxes;
+    private final int initialPlayer;
+    private final int numBoxes;
+    private final int initialBoxesOnGoals;
+
+    // FOR HASHING POSITIONS IN THIS LEVEL
+    private final ZobristKeys zobristKeys;
+
+    /**
+     * Builds the level from cell values as loaded from a level file.
+     *
+     * @param levelData The cell values indexed by [column][row].
+     */
+    public Level(int[][] levelData) {
+        numCols = levelData.length;
+        numRows = levelData[0].length;
+        numCells = numCols * numRows;
+        walls = newBitSet(numCells);
+        floor = newBitSet(numCells);
+        goals = newBitSet(numCells);
+        initialBoxes = newBitSet(numCells);
+        int player = -1;
+        int goalCount = 0;
+        for (int i = 0; i < numCols; i++) {
+            for (int j = 0; j < numRows; j++) {
+                int cell = cellOf(i, j);
+                switch (levelData[i][j]) {
+                    case GameState.WALL:
+                        set(walls, cell);
+                        break;
+                    case GameState.BOX:
+                        set(floor, cell);
+                        set(initialBoxes, cell);
+                        break;
+                    case GameState.GOAL:
+                        set(floor, cell);
+                        set(goals, cell);
+                        goalCount++;
+                        break;
+                    case GameState.PLAYER:
+                        set(floor, cell);
+                        player = cell;
+                        break;
+                    case GameState.FLOOR:
+                        set(floor, cell);
+                        break;
+                    case GameState.BOX_ON_GOAL:
+                        set(floor, cell);
+                        set(goals, cell);
+                        set(initialBoxes, cell);
+                        goalCount++;
+                        break;
+                    case GameState.PLAYER_ON_GOAL:
+                        set(floor, cell);
+                        set(goals, cell);
+                        player = cell;
+                        goalCount++;
+                        break;
+                }
+            }
+        }
+        numGoals = goalCount;
+        initialPlayer = player;
+        int boxCount = 0;
+        int onGoals = 0;
+        for (int i = 0; i < initialBoxes.length; i++) {
+            boxCount += Long.bitCount(initialBoxes[i]);
+            onGoals += Long.bitCount(initialBoxes[i] & goals[i]);
+        }
+        numBoxes = boxCount;
+        initialBoxesOnGoals = onGoals;
+        zobristKeys = new ZobristKeys(numCells);
+
+        // PRECOMPUTE ALL THE STEPS SO MOVES NEVER HAVE TO BOUNDS CHECK
+        Direction[] dirs = Direction.values();
+        neighbors = new int[numCells << 2];
+        for (int cell = 0; cell < numCells; cell++) {
+            int col = colOf(cell);
+            int row = rowOf(cell);
+            for (Direction dir : dirs) {
+                int toCol = col + dir.getColDelta();
+                int toRow = row + dir.getRowDelta();
+                boolean inside = toCol >= 0 && toCol < numCols && toRow >= 0 && toRow < numRows;
+                neighbors[(cell << 2) + dir.ordinal()] = inside ? cellOf(toCol, toRow) : -1;
+            }
+        }
+    }
+
+    // ACCESSOR METHODS
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCells() {
+        return numCells;
+    }
+
+    public int getNumGoals() {
+        return numGoals;
+    }
+
+    public int getNumBoxes() {
+        return numBoxes;
+    }
+
+    public int getInitialPlayer() {
+        return initialPlayer;
+    }
+
+    public int getInitialBoxesOnGoals() {
+        return initialBoxesOnGoals;
+    }
+
+    public ZobristKeys getZobristKeys() {
+        return zobristKeys;
+    }
+
+    /**
+     * Accessor method for the goal bitset. Callers must not change it.
+     *
+     * @return One bit per cell, set for every goal.
+     */
+    public long[] getGoals() {
+        return goals;
+    }
+
+    /**
+     * Makes a copy of the starting box positions, so that a new GameState
+     * can own it.
+     *
+     * @return One bit per cell, set where a box starts.
+     */
+    public long[] copyInitialBoxes() {
+        return initialBoxes.clone();
+    }
+
+    public boolean isWall(int cell) {
+        return isSet(walls, cell);
+    }
+
+    public boolean isFloor(int cell) {
+        return isSet(floor, cell);
+    }
+
+    public boolean isGoal(int cell) {
+        return isSet(goals, cell);
+    }
+
+    /**
+     * Finds the cell one step away from the cell argument.
+     *
+     * @param cell The cell to step from.
+     *
+     * @param dir The direction to step in.
+     *
+     * @return The neighboring cell, or -1 if it would be off the grid.
+     */
+    public int neighbor(int cell, Direction dir) {
+        return neighbors[(cell << 2) + dir.ordinal()];
+    }
+
+    // THESE CONVERT BETWEEN GRID POSITIONS AND FLAT CELL INDICES
+    public int cellOf(int col, int row) {
+        return col * numRows + row;
+    }
+
+    public int colOf(int cell) {
+        return cell / numRows;
+    }
+
+    public int rowOf(int cell) {
+        return cell % numRows;
+    }
+
+    public boolean isInside(int col, int row) {
+        return col >= 0 && col < numCols && row >= 0 && row < numRows;
+    }
+
+    // BITSET HELPERS, SHARED BY EVERYTHING THAT STORES CELLS AS BITS
+
+    /**
+     * Makes an empty bitset with room for numCells cells.
+     *
+     * @param numCells The number of cells the bitset must hold.
+     *
+     * @return A bitset with every bit clear.
+     */
+    public static long[] newBitSet(int numCells) {
+        return new long[(numCells + 63) >>> WORD_SHIFT];
+    }
+
+    public static boolean isSet(long[] bits, int cell) {
+        return (bits[cell >>> WORD_SHIFT] & (1L << cell)) != 0;
+    }
+
+    public static void set(long[] bits, int cell) {
+        bits[cell >>> WORD_SHIFT] |= 1L << cell;
+    }
+
+    public static void clear(long[] bits, int cell) {
+        bits[cell >>> WORD_SHIFT] &= ~(1L << cell);
+    }
+}
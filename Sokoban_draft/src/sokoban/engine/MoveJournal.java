@@ -0,0 +1,170 @@
+package sokoban.engine;
+
+/**
+ * MoveJournal remembers the moves made in a GameState so that they may be
+ * undone and redone. Rather than keeping a copy of the whole level for every
+ * move, each move is packed into a single int holding the cell the player
+ * came from, the direction moved and whether a box was pushed, which is all
+ * that is needed to run the move backwards or forwards again.
+ *
+ * The packed moves live in a primitive ring buffer. By default the buffer
+ * grows as needed, so there is no limit on how far back one may undo, but a
+ * journal may also be given a fixed capacity, in which case the oldest moves
+ * are forgotten once it fills up.
+ */
+public class MoveJournal {
+
+    // HOW THE BITS OF A JOURNAL ENTRY ARE USED
+    private static final int DIRECTION_MASK = 3;
+    private static final int PUSH_FLAG = 4;
+    private static final int CELL_SHIFT = 3;
+
+    // HOW BIG THE BUFFER STARTS OUT IF IT MAY GROW
+    private static final int INIT_CAPACITY = 64;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // THE PACKED MOVES, OLDEST FIRST STARTING AT head
+    private int[] entries;
+    private int head;
+
+    // HOW MANY MOVES ARE IN THE BUFFER, AND HOW MANY OF THOSE ARE
+    // CURRENTLY APPLIED. THE REST ARE AVAILABLE FOR REDO
+    private int size;
+    private int applied;
+
+    // IF TRUE WE OVERWRITE THE OLDEST MOVE RATHER THAN GROW
+    private final boolean bounded;
+
+    /**
+     * Constructs a journal with no limit on the number of undos.
+     */
+    public MoveJournal() {
+        entries = new int[INIT_CAPACITY];
+        bounded = false;
+    }
+
+    /**
+     * Constructs a journal that remembers at most capacity moves.
+     *
+     * @param capacity The maximum number of moves that may be undone,
+     * which must be at least 1.
+     */
+    public MoveJournal(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        entries = new int[capacity];
+        bounded = true;
+    }
+
+    public boolean canUndo() {
+        return applied > 0;
+    }
+
+    public boolean canRedo() {
+        return applied < size;
+    }
+
+    /**
+     * Accessor method for the number of moves that may currently be undone.
+     *
+     * @return The number of applied moves in the journal.
+     */
+    public int getNumMoves() {
+        return applied;
+    }
+
+    /**
+     * Forgets every move.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+        applied = 0;
+    }
+
+    /**
+     * Records a move that was just made. Any moves that had been undone
+     * are forgotten, since they can no longer be redone.
+     *
+     * @param fromCell The cell the player was on before moving.
+     *
+     * @param dir The direction the player moved in.
+     *
+     * @param result What GameState.tryMove returned for the move. BLOCKED
+     * moves changed nothing, so they are not recorded.
+     */
+    public void record(int fromCell, Direction dir, MoveResult result) {
+        if (result == MoveResult.BLOCKED) {
+            return;
+        }
+        int entry = (fromCell << CELL_SHIFT) | dir.ordinal();
+        if (result == MoveResult.PUSHED) {
+            entry |= PUSH_FLAG;
+        }
+
+        // DROP THE REDO TAIL
+        size = applied;
+        if (size == entries.length) {
+            if (bounded) {
+                // FORGET THE OLDEST MOVE
+                head = (head + 1) % entries.length;
+                size--;
+                applied--;
+            } else {
+                grow();
+            }
+        }
+        entries[(head + size) % entries.length] = entry;
+        size++;
+        applied++;
+    }
+
+    /**
+     * Takes back the most recently applied move.
+     *
+     * @param state The state the move was made in.
+     *
+     * @return The direction the undone move had been made in, or null if
+     * there was nothing to undo.
+     */
+    public Direction undo(GameState state) {
+        if (!canUndo()) {
+            return null;
+        }
+        applied--;
+        int entry = entries[(head + applied) % entries.length];
+        Direction dir = DIRECTIONS[entry & DIRECTION_MASK];
+        state.unmove(entry >>> CELL_SHIFT, dir, (entry & PUSH_FLAG) != 0);
+        return dir;
+    }
+
+    /**
+     * Makes the most recently undone move again.
+     *
+     * @param state The state the move was undone in.
+     *
+     * @return The direction that was moved in, or null if there was
+     * nothing to redo.
+     */
+    public Direction redo(GameState state) {
+        if (!canRedo()) {
+            return null;
+        }
+        int entry = entries[(head + applied) % entries.length];
+        Direction dir = DIRECTIONS[entry & DIRECTION_MASK];
+        state.tryMove(dir);
+        applied++;
+        return dir;
+    }
+
+    private void grow() {
+        int[] bigger = new int[entries.length * 2];
+        for (int i = 0; i < size; i++) {
+            bigger[i] = entries[(head + i) % entries.length];
+        }
+        entries = bigger;
+        head = 0;
+    }
+}
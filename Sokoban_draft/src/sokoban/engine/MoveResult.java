@@ -0,0 +1,14 @@
+package sokoban.engine;
+
+/**
+ * The outcome of asking the GameState to move the player.
+ */
+public enum MoveResult {
+
+    // THE PLAYER BUMPED INTO A WALL OR AN UNPUSHABLE BOX, NOTHING CHANGED
+    BLOCKED,
+    // THE PLAYER STEPPED ONTO AN EMPTY FLOOR OR GOAL CELL
+    MOVED,
+    // THE PLAYER STEPPED FORWARD AND PUSHED A BOX ONE CELL AHEAD
+    PUSHED
+}
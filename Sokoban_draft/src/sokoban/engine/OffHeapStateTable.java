@@ -0,0 +1,306 @@
+package sokoban.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * OffHeapStateTable remembers every position a search reaches, along with
+ * the depth it was reached at, outside of the Java heap. Unlike a
+ * TranspositionTable it never forgets a position and never mistakes one
+ * position for another, since it stores each position exactly, packed into
+ * a fixed width entry:
+ *
+ * stamp (int), depth (int), player region cell, then each box cell in order
+ *
+ * where cells take 2 bytes each, or 4 in levels of more than 65536 cells.
+ * The entries live in direct ByteBuffers, so the garbage collector never
+ * has to look at them, and the table doubles in size as it fills. If the
+ * table would grow past its RAM budget, it's moved into a memory mapped
+ * temporary file in the spill directory instead, so the operating system
+ * can page it out, or if there's no spill directory it stops growing and
+ * reports that it's out of room.
+ *
+ * Clearing the table just moves on to a new stamp, so entries with an old
+ * stamp count as empty slots.
+ */
+public class OffHeapStateTable {
+
+    // A SINGLE ByteBuffer CAN'T BE BIGGER THAN 2GB, SO BIG TABLES ARE SPLIT
+    // INTO CHUNKS OF AT MOST THIS MANY BYTES, NEVER SPLITTING AN ENTRY
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    // THE TABLE STARTS THIS BIG, IN MEMORY NO MATTER WHAT THE BUDGET IS
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    // THE STAMP AND DEPTH COME BEFORE THE PACKED POSITION
+    private static final int KEY_OFFSET = 8;
+
+    // ENTRY LAYOUT
+    private final int numKeyCells;
+    private final int cellBytes;
+    private final int entryBytes;
+
+    // WHERE AND HOW MUCH WE MAY STORE
+    private final long ramBudgetBytes;
+    private final File spillDirectory;
+
+    // THE SLOTS, 2^chunkShift OF THEM PER CHUNK
+    private ByteBuffer[] chunks;
+    private int chunkShift;
+    private long capacity;
+    private long size;
+    private int stamp = 1;
+    private boolean spilled;
+    private boolean outOfRoom;
+
+    // THE PACKED POSITION BEING LOOKED UP
+    private final int[] key;
+
+    /**
+     * Constructs an empty table for positions in a level.
+     *
+     * @param numCells How many cells the level has.
+     *
+     * @param numBoxes How many boxes every position has.
+     *
+     * @param initRamBudgetBytes How big the table may get in memory.
+     *
+     * @param initSpillDirectory Where to keep the table once it's bigger
+     * than the RAM budget, or null to never spill to disk.
+     */
+    public OffHeapStateTable(int numCells, int numBoxes, long initRamBudgetBytes, File initSpillDirectory) {
+        numKeyCells = numBoxes + 1;
+        cellBytes = numCells <= (1 << 16) ? 2 : 4;
+        entryBytes = KEY_OFFSET + numKeyCells * cellBytes;
+        ramBudgetBytes = initRamBudgetBytes;
+        spillDirectory = initSpillDirectory;
+        chunkShift = 31 - Integer.numberOfLeadingZeros(MAX_CHUNK_BYTES / entryBytes);
+        key = new int[numKeyCells];
+        chunks = new ByteBuffer[] {
+                ByteBuffer.allocateDirect(INITIAL_CAPACITY * entryBytes).order(ByteOrder.nativeOrder()) };
+        capacity = INITIAL_CAPACITY;
+    }
+
+    // ACCESSOR METHODS
+    public long getSize() {
+        return size;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getAllocatedBytes() {
+        return capacity * entryBytes;
+    }
+
+    public boolean isSpilled() {
+        return spilled;
+    }
+
+    /**
+     * Tests whether the table needed to grow but couldn't. It still works,
+     * but positions that don't fit aren't remembered.
+     *
+     * @return true if the table has run out of room.
+     */
+    public boolean isOutOfRoom() {
+        return outOfRoom;
+    }
+
+    /**
+     * Records that a position was reached at some depth, unless it was
+     * already reached no deeper than that.
+     *
+     * @param boxes The boxes, as a bitset over the level's cells.
+     *
+     * @param playerRegion The smallest cell the player can walk to, which
+     * stands for everywhere the player can walk to.
+     *
+     * @param depth How deep in the search the position was reached.
+     *
+     * @return false if the position was already reached no deeper.
+     */
+    public boolean visit(long[] boxes, int playerRegion, int depth) {
+        if (!outOfRoom && (size + 1) * 4 > capacity * 3) {
+            grow();
+        }
+        packKey(boxes, playerRegion);
+        long slot = hashKey(key) & (capacity - 1);
+        while (true) {
+            ByteBuffer chunk = chunkOf(slot);
+            int at = offsetOf(slot);
+            if (chunk.getInt(at) != stamp) {
+                // WE'VE REACHED A FREE SLOT, SO IT'S A NEW POSITION
+                if (size >= capacity - 1) {
+                    return true;
+                }
+                chunk.putInt(at, stamp);
+                chunk.putInt(at + 4, depth);
+                writeKey(chunk, at + KEY_OFFSET, key);
+                size++;
+                return true;
+            }
+            if (keyMatches(chunk, at + KEY_OFFSET)) {
+                if (chunk.getInt(at + 4) <= depth) {
+                    return false;
+                }
+                chunk.putInt(at + 4, depth);
+                return true;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    /**
+     * Forgets every entry, without touching the memory they're in.
+     */
+    public void clear() {
+        stamp++;
+        size = 0;
+    }
+
+    /**
+     * Doubles the table, moving the current entries into their new slots.
+     */
+    private void grow() {
+        long newCapacity = capacity * 2;
+        ByteBuffer[] newChunks = allocate(newCapacity);
+        if (newChunks == null) {
+            outOfRoom = true;
+            return;
+        }
+        int[] moved = new int[numKeyCells];
+        for (long slot = 0; slot < capacity; slot++) {
+            ByteBuffer chunk = chunkOf(slot);
+            int at = offsetOf(slot);
+            if (chunk.getInt(at) != stamp) {
+                continue;
+            }
+            for (int i = 0; i < numKeyCells; i++) {
+                moved[i] = readCell(chunk, at + KEY_OFFSET + i * cellBytes);
+            }
+            long to = hashKey(moved) & (newCapacity - 1);
+            while (newChunks[(int) (to >>> chunkShift)].getInt(offsetOf(to)) == stamp) {
+                to = (to + 1) & (newCapacity - 1);
+            }
+            ByteBuffer toChunk = newChunks[(int) (to >>> chunkShift)];
+            int toAt = offsetOf(to);
+            toChunk.putInt(toAt, stamp);
+            toChunk.putInt(toAt + 4, chunk.getInt(at + 4));
+            writeKey(toChunk, toAt + KEY_OFFSET, moved);
+        }
+        chunks = newChunks;
+        capacity = newCapacity;
+    }
+
+    /**
+     * Makes zeroed chunks for a table of the given capacity, in memory if it
+     * fits the RAM budget and otherwise in the spill directory.
+     *
+     * @return The chunks, or null if there's nowhere to put them.
+     */
+    private ByteBuffer[] allocate(long newCapacity) {
+        long entriesPerChunk = Math.min(newCapacity, 1L << chunkShift);
+        int chunkBytes = (int) (entriesPerChunk * entryBytes);
+        ByteBuffer[] newChunks = new ByteBuffer[(int) (newCapacity / entriesPerChunk)];
+        if (newCapacity * entryBytes <= ramBudgetBytes) {
+            try {
+                for (int i = 0; i < newChunks.length; i++) {
+                    newChunks[i] = ByteBuffer.allocateDirect(chunkBytes).order(ByteOrder.nativeOrder());
+                }
+                return newChunks;
+            } catch (OutOfMemoryError e) {
+                // THE JVM'S DIRECT MEMORY LIMIT IS LOWER THAN OUR BUDGET
+            }
+        }
+        if (spillDirectory == null) {
+            return null;
+        }
+        try {
+            File spillFile = File.createTempFile("sokstates", ".tmp", spillDirectory);
+            RandomAccessFile raf = new RandomAccessFile(spillFile, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                for (int i = 0; i < newChunks.length; i++) {
+                    newChunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * chunkBytes, chunkBytes)
+                            .order(ByteOrder.nativeOrder());
+                }
+            } finally {
+                raf.close();
+                // THE MAPPINGS KEEP THE DATA AROUND, SO THE NAME CAN GO NOW
+                if (!spillFile.delete()) {
+                    spillFile.deleteOnExit();
+                }
+            }
+            spilled = true;
+            return newChunks;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private ByteBuffer chunkOf(long slot) {
+        return chunks[(int) (slot >>> chunkShift)];
+    }
+
+    private int offsetOf(long slot) {
+        return (int) (slot & ((1L << chunkShift) - 1)) * entryBytes;
+    }
+
+    /**
+     * Packs a position into key, the player's region first and then the box
+     * cells, which come out of the bitset already in order.
+     */
+    private void packKey(long[] boxes, int playerRegion) {
+        key[0] = playerRegion;
+        int k = 1;
+        for (int w = 0; w < boxes.length && k < numKeyCells; w++) {
+            long bits = boxes[w];
+            while (bits != 0) {
+                key[k++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    private static long hashKey(int[] cells) {
+        long h = 0;
+        for (int cell : cells) {
+            h = (h + cell) * 0x9E3779B97F4A7C15L;
+        }
+        // MIX THE HIGH BITS DOWN, SINCE WE INDEX WITH THE LOW ONES
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private boolean keyMatches(ByteBuffer chunk, int at) {
+        for (int i = 0; i < numKeyCells; i++) {
+            if (readCell(chunk, at + i * cellBytes) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeKey(ByteBuffer chunk, int at, int[] cells) {
+        for (int i = 0; i < numKeyCells; i++) {
+            if (cellBytes == 2) {
+                chunk.putShort(at + i * 2, (short) cells[i]);
+            } else {
+                chunk.putInt(at + i * 4, cells[i]);
+            }
+        }
+    }
+
+    private int readCell(ByteBuffer chunk, int at) {
+        return cellBytes == 2 ? chunk.getShort(at) & 0xFFFF : chunk.getInt(at);
+    }
+}
@@ -0,0 +1,78 @@
+package sokoban.engine;
+
+import sokoban.engine.TranspositionTable.ReplacementPolicy;
+
+/**
+ * StripedTranspositionTable is a TranspositionTable that many threads may
+ * use at once. It's split into stripes, each an ordinary table with its own
+ * lock, and a position always goes to the stripe picked by the high bits of
+ * its hash. Threads only wait on each other when they touch the same stripe
+ * at the same moment, which with enough stripes is rare.
+ */
+public class StripedTranspositionTable {
+
+    // 2^STRIPE_BITS STRIPES, ENOUGH THAT EVEN 32 THREADS SELDOM COLLIDE
+    private static final int STRIPE_BITS = 8;
+
+    private final TranspositionTable[] stripes;
+
+    /**
+     * Constructs an empty table.
+     *
+     * @param sizeBits The whole table holds 2^sizeBits entries.
+     *
+     * @param initPolicy What to do when a new entry doesn't fit.
+     */
+    public StripedTranspositionTable(int sizeBits, ReplacementPolicy initPolicy) {
+        int stripeBits = Math.min(STRIPE_BITS, sizeBits);
+        stripes = new TranspositionTable[1 << stripeBits];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new TranspositionTable(sizeBits - stripeBits, initPolicy);
+        }
+    }
+
+    // ACCESSOR METHODS
+    public int getCapacity() {
+        return stripes.length * stripes[0].getCapacity();
+    }
+
+    /**
+     * Records that a position was reached at some depth, unless it was
+     * already reached no deeper than that, as one atomic step.
+     *
+     * @param hash The Zobrist hash of the position.
+     *
+     * @param depth How deep in the search the position was reached.
+     *
+     * @return false if the position was already reached no deeper, so
+     * whoever got there first is searching it.
+     */
+    public boolean visit(long hash, long depth) {
+        TranspositionTable stripe = stripeOf(hash);
+        synchronized (stripe) {
+            long seenDepth = stripe.get(hash);
+            if (seenDepth != TranspositionTable.NOT_FOUND && seenDepth <= depth) {
+                return false;
+            }
+            stripe.put(hash, depth);
+            return true;
+        }
+    }
+
+    /**
+     * Forgets every entry. Should only be called while no other thread is
+     * using the table.
+     */
+    public void clear() {
+        for (TranspositionTable stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    private TranspositionTable stripeOf(long hash) {
+        // THE STRIPES INDEX THEIR SLOTS WITH THE LOW BITS, SO WE USE THE HIGH
+        return stripes[(int) (hash >>> 32) & (stripes.length - 1)];
+    }
+}
@@ -0,0 +1,143 @@
+package sokoban.engine;
+
+import java.util.Arrays;
+
+/**
+ * TranspositionTable remembers a long value for each of a large number of
+ * positions, keyed by their 64-bit Zobrist hash. It is an open-addressing
+ * hash table stored in a single primitive long[] of (key, value) pairs, so it
+ * never allocates after construction and costs 16 bytes per entry.
+ *
+ * The table has a fixed size. When a new position finds all of its candidate
+ * slots taken, the ReplacementPolicy decides which old entry gives way. Since
+ * only hashes are stored, two different positions with the same hash are
+ * treated as the same one, which is very unlikely with 64 bits.
+ */
+public class TranspositionTable {
+
+    /**
+     * How to make room for a new entry when its slots are all in use.
+     */
+    public enum ReplacementPolicy {
+
+        // THE NEW ENTRY ALWAYS TAKES THE FIRST SLOT IT PROBED
+        ALWAYS_REPLACE,
+        // THE ENTRY WITH THE LARGEST VALUE GIVES WAY, BUT ONLY TO A NEW
+        // ENTRY WITH A SMALLER VALUE. FOR SEARCHES THAT STORE A DEPTH THIS
+        // KEEPS THE POSITIONS NEAREST THE ROOT, WHICH PRUNE THE MOST
+        KEEP_SMALLEST_VALUE
+    }
+
+    // RETURNED BY get FOR POSITIONS THAT AREN'T IN THE TABLE
+    public static final long NOT_FOUND = Long.MIN_VALUE;
+
+    // HOW MANY NEIGHBORING SLOTS A KEY MAY LIVE IN
+    private static final int PROBE_LIMIT = 4;
+
+    // AN EMPTY SLOT HAS A ZERO KEY, SO A REAL ZERO HASH IS STORED AS THIS
+    private static final long ZERO_KEY = 1;
+
+    // KEY AT 2 * slot, VALUE AT 2 * slot + 1
+    private final long[] slots;
+    private final int slotMask;
+    private final ReplacementPolicy policy;
+    private int size;
+
+    /**
+     * Constructs an empty table.
+     *
+     * @param sizeBits The table holds 2^sizeBits entries.
+     *
+     * @param initPolicy What to do when a new entry doesn't fit.
+     */
+    public TranspositionTable(int sizeBits, ReplacementPolicy initPolicy) {
+        slots = new long[2 << sizeBits];
+        slotMask = (1 << sizeBits) - 1;
+        policy = initPolicy;
+    }
+
+    // ACCESSOR METHODS
+    public int getCapacity() {
+        return slotMask + 1;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Looks up the value stored for a position.
+     *
+     * @param hash The Zobrist hash of the position.
+     *
+     * @return The stored value, or NOT_FOUND.
+     */
+    public long get(long hash) {
+        long key = hash == 0 ? ZERO_KEY : hash;
+        int slot = indexOf(key);
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            int at = ((slot + i) & slotMask) << 1;
+            if (slots[at] == key) {
+                return slots[at + 1];
+            }
+            if (slots[at] == 0) {
+                return NOT_FOUND;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Stores a value for a position, replacing any value it already had.
+     *
+     * @param hash The Zobrist hash of the position.
+     *
+     * @param value The value to remember.
+     *
+     * @return false if the replacement policy kept an older entry instead.
+     */
+    public boolean put(long hash, long value) {
+        long key = hash == 0 ? ZERO_KEY : hash;
+        int slot = indexOf(key);
+        int victim = -1;
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            int at = ((slot + i) & slotMask) << 1;
+            if (slots[at] == key) {
+                slots[at + 1] = value;
+                return true;
+            }
+            if (slots[at] == 0) {
+                slots[at] = key;
+                slots[at + 1] = value;
+                size++;
+                return true;
+            }
+            if (victim < 0 || slots[at + 1] > slots[victim + 1]) {
+                victim = at;
+            }
+        }
+
+        // EVERY SLOT IS TAKEN BY SOME OTHER POSITION
+        if (policy == ReplacementPolicy.ALWAYS_REPLACE) {
+            victim = (slot & slotMask) << 1;
+        } else if (value >= slots[victim + 1]) {
+            return false;
+        }
+        slots[victim] = key;
+        slots[victim + 1] = value;
+        return true;
+    }
+
+    /**
+     * Forgets every entry.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    private int indexOf(long key) {
+        // THE LOW BITS OF A ZOBRIST HASH ARE ALREADY RANDOM
+        return (int) key & slotMask;
+    }
+}
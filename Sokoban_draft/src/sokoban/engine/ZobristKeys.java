@@ -0,0 +1,73 @@
+package sokoban.engine;
+
+/**
+ * ZobristKeys holds a random 64-bit key for a box and for the player on every
+ * cell of a level. The hash of a position is the XOR of the keys of whatever
+ * is on each cell, so pushing a box only changes the hash by XORing out the
+ * key for the cell it left and XORing in the key for the cell it entered.
+ *
+ * The keys come from a fixed seed, so the same level always hashes the same
+ * way from one run to the next.
+ */
+public class ZobristKeys {
+
+    // ANY ODD CONSTANT WILL DO, THIS IS THE USUAL SPLITMIX64 ONE
+    private static final long SEED_INCREMENT = 0x9E3779B97F4A7C15L;
+
+    private final long[] boxKeys;
+    private final long[] playerKeys;
+
+    /**
+     * Constructs the keys for a level with numCells cells.
+     *
+     * @param numCells The number of cells in the level.
+     */
+    public ZobristKeys(int numCells) {
+        boxKeys = new long[numCells];
+        playerKeys = new long[numCells];
+        long seed = numCells;
+        for (int i = 0; i < numCells; i++) {
+            seed += SEED_INCREMENT;
+            boxKeys[i] = mix(seed);
+            seed += SEED_INCREMENT;
+            playerKeys[i] = mix(seed);
+        }
+    }
+
+    public long boxKey(int cell) {
+        return boxKeys[cell];
+    }
+
+    public long playerKey(int cell) {
+        return playerKeys[cell];
+    }
+
+    /**
+     * Computes the hash of a set of boxes from scratch. After this, the hash
+     * should be kept up to date one push at a time.
+     *
+     * @param boxes One bit per cell, set where there is a box.
+     *
+     * @return The XOR of the box keys of every box.
+     */
+    public long hashBoxes(long[] boxes) {
+        long hash = 0;
+        for (int w = 0; w < boxes.length; w++) {
+            long bits = boxes[w];
+            while (bits != 0) {
+                hash ^= boxKeys[(w << 6) + Long.numberOfTrailingZeros(bits)];
+                bits &= bits - 1;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * The SplitMix64 finalizer, which turns a counter into well spread bits.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,153 @@
+package sokoban.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * LevelPack stores many levels in a single file, so a whole collection can
+ * be opened at once instead of one .sok file per level. The file starts with
+ * a header:
+ *
+ * magic number, version, number of levels
+ *
+ * followed by an index entry for each level:
+ *
+ * payload offset (long), columns, rows, CRC32 of the payload
+ *
+ * and then the payloads, which are the cell values of each level, one byte
+ * per cell in the same column by column order the .sok files use. Everything
+ * is big-endian, like the .sok files.
+ *
+ * The pack is memory mapped when it's opened and levels are read straight out
+ * of the mapping, so opening a pack costs the same no matter how many levels
+ * it holds, and only the levels actually played are ever read from disk.
+ */
+public class LevelPack {
+
+	// "SOKP", SO WE DON'T MISTAKE SOME OTHER FILE FOR A PACK
+	static final int MAGIC = 0x534F4B50;
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 12;
+	static final int INDEX_ENTRY_SIZE = 20;
+
+	private final MappedByteBuffer buffer;
+	private final int numLevels;
+
+	/**
+	 * Opens and maps a level pack, checking its header. Each level's index
+	 * entry and payload aren't looked at until the level is read.
+	 *
+	 * @param file The pack to open.
+	 *
+	 * @throws IOException If the file can't be read or isn't a level pack.
+	 */
+	public LevelPack(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			// THE MAPPING STAYS VALID ONCE THE FILE IS CLOSED
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a level pack: " + file);
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported level pack version: " + file);
+		}
+		numLevels = buffer.getInt(8);
+		if (numLevels < 0 || HEADER_SIZE + (long) numLevels * INDEX_ENTRY_SIZE > buffer.capacity()) {
+			throw new IOException("Level pack index is cut off: " + file);
+		}
+	}
+
+	// ACCESSOR METHODS
+	public int getNumLevels() {
+		return numLevels;
+	}
+
+	public int getNumCols(int index) {
+		return buffer.getInt(indexEntry(index) + 8);
+	}
+
+	public int getNumRows(int index) {
+		return buffer.getInt(indexEntry(index) + 12);
+	}
+
+	/**
+	 * Reads one level out of the pack, checking it against its checksum.
+	 *
+	 * @param index Which level, counting from 0.
+	 *
+	 * @return The cell values indexed by [column][row], just as
+	 * SokobanFileLoader.readLevel returns them.
+	 *
+	 * @throws IOException If the level's index entry points outside of the
+	 * pack or its checksum doesn't match.
+	 */
+	public int[][] readLevel(int index) throws IOException {
+		if (index < 0 || index >= numLevels) {
+			throw new IOException("No level " + index + " in this pack");
+		}
+		int cols = getNumCols(index);
+		int rows = getNumRows(index);
+		long offset = getOffset(index);
+		if (offset < 0 || cols <= 0 || rows <= 0 || offset + (long) cols * rows > buffer.capacity()) {
+			throw new IOException("Level " + index + " is outside of the level pack");
+		}
+		ByteBuffer payload = buffer.duplicate();
+		payload.position((int) offset);
+		payload.limit(payload.position() + cols * rows);
+		CRC32 crc = new CRC32();
+		crc.update(payload.slice());
+		if ((int) crc.getValue() != buffer.getInt(indexEntry(index) + 16)) {
+			throw new IOException("Level " + index + " of the pack is corrupt");
+		}
+		int[][] levelData = new int[cols][rows];
+		for (int i = 0; i < cols; i++) {
+			for (int j = 0; j < rows; j++) {
+				levelData[i][j] = payload.get();
+			}
+		}
+		return levelData;
+	}
+
+	private int indexEntry(int index) {
+		return HEADER_SIZE + index * INDEX_ENTRY_SIZE;
+	}
+
+	private long getOffset(int index) {
+		return buffer.getLong(indexEntry(index));
+	}
+
+	/**
+	 * Writes levels into a new pack. See LevelPackWriter for writing levels
+	 * one at a time.
+	 *
+	 * @param file Where to write the pack.
+	 *
+	 * @param levels The cell values of each level, indexed by [column][row].
+	 *
+	 * @throws IOException If the pack can't be written.
+	 */
+	public static void write(File file, List<int[][]> levels) throws IOException {
+		LevelPackWriter writer = new LevelPackWriter(file);
+		try {
+			for (int[][] levelData : levels) {
+				writer.addLevel(levelData);
+			}
+		} catch (IOException | RuntimeException e) {
+			writer.abort();
+			throw e;
+		}
+		writer.close();
+	}
+}
@@ -0,0 +1,144 @@
+package sokoban.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * LevelPackWriter writes a LevelPack one level at a time, so a pack can be
+ * made from a collection far too big to hold in memory at once. Each level's
+ * payload goes straight to a temporary file, and only its index entry is
+ * kept. When the writer is closed the header and index are written to a
+ * second temporary file, the payloads are copied in after them, and that file
+ * is moved into place, so a pack that's being replaced is never seen half
+ * written.
+ */
+public class LevelPackWriter {
+
+	private final File file;
+	private final File payloadFile;
+	private final RandomAccessFile payloadOut;
+
+	// THE INDEX ENTRIES SO FAR. OFFSETS ARE FROM THE START OF THE PAYLOADS
+	private long[] offsets = new long[64];
+	private int[] numCols = new int[64];
+	private int[] numRows = new int[64];
+	private int[] checksums = new int[64];
+	private int numLevels;
+	private long payloadSize;
+
+	/**
+	 * Starts writing a pack.
+	 *
+	 * @param initFile Where the pack will go once the writer is closed.
+	 *
+	 * @throws IOException If the temporary file can't be made.
+	 */
+	public LevelPackWriter(File initFile) throws IOException {
+		file = initFile;
+		payloadFile = File.createTempFile("sokpack", ".payload", file.getAbsoluteFile().getParentFile());
+		payloadOut = new RandomAccessFile(payloadFile, "rw");
+	}
+
+	public int getNumLevels() {
+		return numLevels;
+	}
+
+	/**
+	 * Adds a level to the end of the pack.
+	 *
+	 * @param levelData The cell values indexed by [column][row].
+	 *
+	 * @throws IOException If the level can't be written.
+	 */
+	public void addLevel(int[][] levelData) throws IOException {
+		int cols = levelData.length;
+		int rows = levelData[0].length;
+		byte[] payload = new byte[cols * rows];
+		int k = 0;
+		for (int i = 0; i < cols; i++) {
+			for (int j = 0; j < rows; j++) {
+				payload[k++] = (byte) levelData[i][j];
+			}
+		}
+		payloadOut.write(payload);
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		if (numLevels == offsets.length) {
+			int bigger = numLevels * 2;
+			offsets = Arrays.copyOf(offsets, bigger);
+			numCols = Arrays.copyOf(numCols, bigger);
+			numRows = Arrays.copyOf(numRows, bigger);
+			checksums = Arrays.copyOf(checksums, bigger);
+		}
+		offsets[numLevels] = payloadSize;
+		numCols[numLevels] = cols;
+		numRows[numLevels] = rows;
+		checksums[numLevels] = (int) crc.getValue();
+		numLevels++;
+		payloadSize += payload.length;
+	}
+
+	/**
+	 * Gives up on the pack, deleting the temporary file. Whatever was at
+	 * the pack's location is left alone.
+	 */
+	public void abort() {
+		try {
+			payloadOut.close();
+		} catch (IOException e) {
+			// WE'RE DELETING IT ANYWAY
+		}
+		payloadFile.delete();
+	}
+
+	/**
+	 * Finishes the pack and moves it into place.
+	 *
+	 * @throws IOException If the pack can't be written.
+	 */
+	public void close() throws IOException {
+		File packFile = null;
+		try {
+			int indexSize = LevelPack.HEADER_SIZE + numLevels * LevelPack.INDEX_ENTRY_SIZE;
+			ByteBuffer header = ByteBuffer.allocate(indexSize);
+			header.putInt(LevelPack.MAGIC).putInt(LevelPack.VERSION).putInt(numLevels);
+			for (int n = 0; n < numLevels; n++) {
+				header.putLong(indexSize + offsets[n]).putInt(numCols[n]).putInt(numRows[n]).putInt(checksums[n]);
+			}
+			header.flip();
+
+			packFile = File.createTempFile("sokpack", ".tmp", file.getAbsoluteFile().getParentFile());
+			RandomAccessFile packOut = new RandomAccessFile(packFile, "rw");
+			try {
+				FileChannel out = packOut.getChannel();
+				while (header.hasRemaining()) {
+					out.write(header);
+				}
+				FileChannel in = payloadOut.getChannel();
+				long copied = 0;
+				while (copied < payloadSize) {
+					copied += in.transferTo(copied, payloadSize - copied, out);
+				}
+				out.force(true);
+			} finally {
+				packOut.close();
+			}
+			Files.move(packFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			payloadOut.close();
+			payloadFile.delete();
+			if (packFile != null) {
+				packFile.delete();
+			}
+		}
+	}
+}
@@ -1,26 +1,95 @@
 package sokoban.file;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.HashMap;
 
 import application.Main.SokobanPropertyType;
+import javafx.application.Platform;
 import properties_manager.PropertiesManager;
+import sokoban.game.StatsAggregator;
 import sokoban.ui.SokobanUI;
 
 public class SokobanFileLoader {
+	// WHERE GAME RESULTS ARE KEPT, AND WHERE THEY WERE KEPT BEFORE
+	private static final String STATS_JOURNAL_PATH = "data/stats.sokjournal";
+	private static final String LEGACY_STATS_PATH = "data/stats.sokstat";
+	private static final int NUM_LEVELS = 7;
+
+	// THE STATS PAGE, AND THE TEMPLATE IT'S MADE FROM
+	private static final String STATS_TEMPLATE_PATH = "data/statsHTML_base.html";
+	private static final String STATS_PAGE_PATH = "data/statsHTML.html";
+
+	// SEPARATES A PACK'S FILE NAME FROM THE INDEX OF A LEVEL IN IT
+	private static final char PACK_INDEX_SEPARATOR = '#';
+
 	SokobanUI ui;
+	// EVERY LEVEL PACK OPENED SO FAR, BY FILE NAME
+	private HashMap<String, LevelPack> levelPacks = new HashMap<String, LevelPack>();
+	// THE JOURNAL IS ONLY USED BY THE WRITER'S THREAD, WHILE THE JAVAFX
+	// THREAD KEEPS ITS OWN COPY OF THE TOTALS. THAT COPY IS MADE THE FIRST
+	// TIME IT'S NEEDED, AND UNTIL THEN THE RESULTS TO ADD TO IT ARE KEPT
+	// AS { level, time }
+	private StatsWriter statsWriter;
+	private StatsAggregator stats;
+	private ArrayList<int[]> unaddedResults = new ArrayList<int[]>();
+	private StatsPageTemplate statsTemplate;
+	// TRUE IF THE STATS PAGE MAY NOT MATCH THE JOURNAL
+	private boolean statsPageStale = true;
 	public SokobanFileLoader(SokobanUI ui) {
 		this.ui = ui;
+		openStats();
 	}
 
+	/**
+	 * Loads a level from the data directory. This may either be a .sok
+	 * file, like level1.sok, or a level in a pack, given as the pack's file
+	 * name and the level's index counting from 0, like community.sokpack#12.
+	 * Each pack is only opened once.
+	 *
+	 * @param fileName The level to load.
+	 *
+	 * @return The cell values indexed by [column][row].
+	 */
 	public int[][] loadLevel(String fileName) throws FileNotFoundException, IOException{
-			File file = new File("data/"+fileName);
-			FileInputStream fis = new FileInputStream(file.getPath());
+			int split = fileName.lastIndexOf(PACK_INDEX_SEPARATOR);
+			if (split < 0) {
+				return readLevel(new File("data/"+fileName));
+			}
+			String packName = fileName.substring(0, split);
+			int index;
+			try {
+				index = Integer.parseInt(fileName.substring(split + 1));
+			} catch (NumberFormatException e) {
+				throw new IOException("Bad level index in " + fileName);
+			}
+			LevelPack pack = levelPacks.get(packName);
+			if (pack == null) {
+				pack = new LevelPack(new File("data/"+packName));
+				levelPacks.put(packName, pack);
+			}
+			return pack.readLevel(index);
+	}
+
+	/**
+	 * Reads a level file as written by the level editor. This doesn't need
+	 * a user interface, so tools like the solver may use it directly.
+	 *
+	 * @param file The .sok file to read.
+	 *
+	 * @return The cell values indexed by [column][row].
+	 */
+	public static int[][] readLevel(File file) throws FileNotFoundException, IOException{
 			byte[] buffer = new byte[(int)file.length()];
-			DataInputStream dis = new DataInputStream(fis);
-			dis.readFully(buffer);
+			DataInputStream dis = new DataInputStream(new FileInputStream(file.getPath()));
+			try {
+				dis.readFully(buffer);
+			} finally {
+				dis.close();
+			}
 			ByteArrayInputStream bis = new ByteArrayInputStream(buffer);
 			dis = new DataInputStream(bis);
 			int cols = dis.readInt();
@@ -33,122 +102,181 @@ public class SokobanFileLoader {
 			}
 			return levelData;
 	}
-	public ArrayList<ArrayList<Integer>> getStats() {
+	/**
+	 * Starts the stats writer thread, which opens the stats journal right
+	 * away, so that's done long before a game ends and needs it.
+	 */
+	private void openStats() {
+		statsWriter = new StatsWriter(this::openStatsJournal, this::reportStatsError);
+	}
+
+	/**
+	 * Tells the player something went wrong with the stats. This may be
+	 * called from any thread.
+	 */
+	private void reportStatsError() {
+		Platform.runLater(() -> ui.getErrorHandler().processError(SokobanPropertyType.ERROR_INVALID_FILE));
+	}
+
+	/**
+	 * Opens the stats journal. If there's no journal yet but there are
+	 * stats in the old format, where the whole history was rewritten after
+	 * every game, those are copied into it. This is run on the stats
+	 * writer's thread.
+	 *
+	 * @return The opened journal.
+	 */
+	private StatsJournal openStatsJournal() throws IOException {
+		File journalFile = new File(STATS_JOURNAL_PATH);
+		File legacyFile = new File(LEGACY_STATS_PATH);
+		if (!journalFile.exists() && legacyFile.exists()) {
+			migrateLegacyStats(legacyFile, journalFile);
+		}
+		return new StatsJournal(journalFile, NUM_LEVELS);
+	}
+
+	/**
+	 * Copies stats in the old format into a new journal. The journal is
+	 * written under a temporary name and only renamed once it's complete,
+	 * so if we're stopped part way the migration just happens again next
+	 * time. If the old file is broken, we say so and keep what we could
+	 * read.
+	 */
+	private void migrateLegacyStats(File legacyFile, File journalFile) throws IOException {
+		ArrayList<ArrayList<Integer>> levelStats = new ArrayList<ArrayList<Integer>>();
+		for(int i=0;i<NUM_LEVELS;i++) {
+			levelStats.add(new ArrayList<Integer>());
+		}
 		try {
-			File file = new File("data/stats.sokstat");
-			FileInputStream fis = new FileInputStream(file.getPath());
-			byte[] buffer = new byte[(int)file.length()];
-			DataInputStream dis = new DataInputStream(fis);
-			dis.readFully(buffer);
-			ByteArrayInputStream bis = new ByteArrayInputStream(buffer);
-			dis = new DataInputStream(bis);
-			ArrayList<ArrayList<Integer>> levelStats= new ArrayList<ArrayList<Integer>>();
-			for(int i=0;i<7;i++) {
-				levelStats.add(new ArrayList<Integer>());
-			}
-			for(int i=0;i<7;i++) {
-				int num = dis.readInt();
-				for(int j=0;j<num;j++) {
-					levelStats.get(i).add(dis.readInt());
-				}
-			}
-			return levelStats;
+			readLegacyStats(legacyFile, levelStats);
 		} catch (IOException e) {
-			ui.getErrorHandler().processError(SokobanPropertyType.ERROR_INVALID_FILE);
+			reportStatsError();
+		}
+		File tempFile = new File(journalFile.getPath() + ".tmp");
+		tempFile.delete();
+		try {
+			StatsJournal journal = new StatsJournal(tempFile, NUM_LEVELS);
 			try {
-				File file = new File("data/stats.sokstat");
-				file.delete();
-				FileOutputStream fos = new FileOutputStream(file);
-				DataOutputStream dos = new DataOutputStream(fos);
-				// FIRST WRITE THE DIMENSIONS
-				for(int i=0;i<7;i++){
-					dos.writeInt(0);
+				for (int i = 0; i < levelStats.size(); i++) {
+					for (int time : levelStats.get(i)) {
+						journal.record(i + 1, time);
+					}
 				}
-			} catch (IOException e1) {
-				e.printStackTrace();
+				journal.compact();
+			} finally {
+				journal.close();
 			}
+			Files.move(tempFile.toPath(), journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tempFile.delete();
 		}
-		return new ArrayList<ArrayList<Integer>>(7);
 	}
-	public void addToStats(int level, int time) {
+
+	/**
+	 * Reads stats written in the old format, which is a count of games
+	 * followed by that many times for each level.
+	 *
+	 * @param file The old stats file.
+	 *
+	 * @param levelStats The times for each level, which the times read are
+	 * added to. If the file turns out to be broken, what was read before
+	 * the problem is still added.
+	 *
+	 * @throws IOException If the file can't be read completely.
+	 */
+	private static void readLegacyStats(File file, ArrayList<ArrayList<Integer>> levelStats) throws IOException {
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
 		try {
-			File file = new File("data/stats.sokstat");
-			FileInputStream fis = new FileInputStream(file.getPath());
-			byte[] buffer = new byte[(int)file.length()];
-			DataInputStream dis = new DataInputStream(fis);
-			dis.readFully(buffer);
-			ByteArrayInputStream bis = new ByteArrayInputStream(buffer);
-			dis = new DataInputStream(bis);
-			ArrayList<ArrayList<Integer>> levelStats= new ArrayList<ArrayList<Integer>>();
-			for(int i=0;i<7;i++) {
-				levelStats.add(new ArrayList<Integer>());
-			}
-			for(int i=0;i<7;i++) {
+			for(int i=0;i<NUM_LEVELS;i++) {
 				int num = dis.readInt();
 				for(int j=0;j<num;j++) {
 					levelStats.get(i).add(dis.readInt());
 				}
 			}
-			file.delete();
-			FileOutputStream fos = new FileOutputStream("data/stats.sokstat");
-			DataOutputStream dos = new DataOutputStream(fos);
-			levelStats.get(level-1).add(time);
-			for(int i=0;i<7;i++) {
-				dos.writeInt(levelStats.get(i).size());
-				for(int j=0;j<levelStats.get(i).size();j++) {
-					dos.writeInt(levelStats.get(i).get(j));
+		} finally {
+			dis.close();
+		}
+	}
+
+	/**
+	 * Accessor method for the running totals of every game recorded, for
+	 * each level. These include results still waiting to be written.
+	 *
+	 * The first time, this may have to wait for the journal to finish
+	 * opening, but that started when this loader was made.
+	 *
+	 * @return The totals, which only count this session's games if the
+	 * stats can't be read.
+	 */
+	public StatsAggregator getStatsAggregator() {
+		if (stats == null) {
+			stats = new StatsAggregator(NUM_LEVELS);
+			try {
+				StatsAggregator saved = statsWriter.getSavedStats();
+				for (int level = 1; level <= NUM_LEVELS; level++) {
+					stats.restore(level, saved.getPlayed(level), saved.getWon(level), saved.getFastest(level));
 				}
+			} catch (IOException e) {
+				ui.getErrorHandler().processError(SokobanPropertyType.ERROR_INVALID_FILE);
 			}
-			file = new File("data/statsHTML_base.html");
-			Scanner fileReader = new Scanner(file);
-			String htmlCode = "";
-			while(fileReader.hasNext()) {
-				htmlCode+= fileReader.nextLine() + "\n";
-			}
-			for(int i=0;i<7;i++) {
-				int wins = 0;
-				int played = levelStats.get(i).size();
-				htmlCode = htmlCode.replaceAll("PLACEHOLDER_"+(i+1)+"_PLAYED", played+"");
-				for(int j=0;j<played;j++) {
-					if(levelStats.get(i).get(j) > 0)
-						wins++;
-				}
-				htmlCode = htmlCode.replaceAll("PLACEHOLDER_"+(i+1)+"_WON", wins+"");
-				if(played!=0) {
-					htmlCode = htmlCode.replaceAll("PLACEHOLDER_" + (i + 1) + "_PERCENTAGE", (((double) wins / played)*100) + "%");
-				}
-				else {
-					htmlCode = htmlCode.replaceAll("PLACEHOLDER_" + (i + 1) + "_PERCENTAGE", "-");
-				}
-				if (wins!=0){
-					int fastest = Integer.MAX_VALUE;
-					for(int j=0;j<played;j++) {
-						if(levelStats.get(i).get(j) > 0 && levelStats.get(i).get(j) < fastest) {
-							fastest = levelStats.get(i).get(j);
-						}
-					}
-					htmlCode = htmlCode.replaceAll("PLACEHOLDER_" + (i + 1) + "_FASTEST", fastest + " seconds");
-				}
-				else htmlCode = htmlCode.replaceAll("PLACEHOLDER_" + (i + 1) + "_FASTEST", "-");
+			for (int[] result : unaddedResults) {
+				stats.record(result[0], result[1]);
 			}
+			unaddedResults = null;
+		}
+		return stats;
+	}
 
-			File logFile=new File("data/statsHTML.html");
-			BufferedWriter writer = new BufferedWriter(new FileWriter(logFile));
-			writer.write(htmlCode);
-			writer.flush();
-		} catch (IOException e) {
-			ui.getErrorHandler().processError(SokobanPropertyType.ERROR_INVALID_FILE);
-			ui.getErrorHandler().processError(SokobanPropertyType.ERROR_INVALID_FILE);
+	/**
+	 * Records the result of a game. The totals are updated right away, but
+	 * the result is written to the journal on the stats writer's thread,
+	 * so this never waits on the disk. The stats page is brought up to date
+	 * the next time it's shown.
+	 *
+	 * @param level The level played, counting from 1.
+	 *
+	 * @param time How long the game took in seconds, negative if lost.
+	 */
+	public void addToStats(int level, int time) {
+		if (stats != null) {
+			stats.record(level, time);
+		} else {
+			unaddedResults.add(new int[] { level, time });
+		}
+		statsWriter.submit(level, time);
+		statsPageStale = true;
+	}
+
+	/**
+	 * Writes any results still waiting and closes the stats journal. This
+	 * should be called when the application is shutting down.
+	 */
+	public void closeStats() {
+		statsWriter.shutdown();
+	}
+
+	/**
+	 * Writes the stats page from its template, if any results have been
+	 * recorded since it was last written.
+	 */
+	public void writeStatsPage() {
+		if (!statsPageStale) {
+			return;
+		}
+		try {
+			if (statsTemplate == null) {
+				statsTemplate = new StatsPageTemplate(new File(STATS_TEMPLATE_PATH));
+			}
+			String htmlCode = statsTemplate.render(getStatsAggregator());
+			BufferedWriter writer = new BufferedWriter(new FileWriter(STATS_PAGE_PATH));
 			try {
-				File file = new File("data/stats.sokstat");
-				file.delete();
-				FileOutputStream fos = new FileOutputStream(file);
-				DataOutputStream dos = new DataOutputStream(fos);
-				// FIRST WRITE THE DIMENSIONS
-				for(int i=0;i<7;i++){dos.writeInt(0);}
-			} catch (IOException e1) {
-				e.printStackTrace();
+				writer.write(htmlCode);
+			} finally {
+				writer.close();
 			}
+			statsPageStale = false;
+		} catch (IOException e) {
+			ui.getErrorHandler().processError(SokobanPropertyType.ERROR_INVALID_FILE);
 		}
 	}
 
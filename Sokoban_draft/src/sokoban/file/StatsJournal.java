@@ -0,0 +1,252 @@
+package sokoban.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import sokoban.game.StatsAggregator;
+
+/**
+ * StatsJournal stores the result of every game played as a fixed size record
+ * appended to the end of a file, so recording a result never has to read or
+ * rewrite what is already there. Each record is 8 bytes, the level number and
+ * the time in seconds, where a negative time means the game was lost.
+ *
+ * The file starts with a summary header holding the number of games played,
+ * the number won and the fastest win for each level, along with how many
+ * records the summary covers and a CRC of the header. The header is rewritten
+ * every so often to cover the newer records. When the file is opened, only
+ * the records after the ones it covers need to be read. If the process died
+ * while the header was being written, the CRC won't match, and the summary is
+ * rebuilt from the records, which are never overwritten. A record that was
+ * only partly written is simply dropped.
+ */
+public class StatsJournal {
+
+	// "SOKJ", SO WE DON'T MISTAKE SOME OTHER FILE FOR A JOURNAL
+	private static final int MAGIC = 0x534F4B4A;
+	private static final int VERSION = 1;
+
+	// BYTES IN EACH RESULT RECORD
+	private static final int RECORD_SIZE = 8;
+
+	// HOW MANY NEW RECORDS WE ALLOW BEFORE REWRITING THE HEADER
+	private static final int COMPACT_INTERVAL = 32;
+
+	private final RandomAccessFile file;
+	private final int numLevels;
+	private final int headerSize;
+
+	// THE SUMMARY OF EVERY RECORD IN THE FILE
+	private final StatsAggregator stats;
+
+	// HOW MANY RECORDS THERE ARE, AND HOW MANY THE HEADER COVERS
+	private int numRecords;
+	private int compactedRecords;
+
+	/**
+	 * Opens a journal, making a new empty one if the file doesn't exist.
+	 *
+	 * @param initFile The journal file.
+	 *
+	 * @param initNumLevels The number of levels to keep results for.
+	 *
+	 * @throws IOException If the file can't be read or isn't a journal.
+	 */
+	public StatsJournal(File initFile, int initNumLevels) throws IOException {
+		numLevels = initNumLevels;
+		headerSize = 20 + 12 * numLevels;
+		stats = new StatsAggregator(numLevels);
+		file = new RandomAccessFile(initFile, "rw");
+		try {
+			open();
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	private void open() throws IOException {
+		clearSummary();
+		if (file.length() < headerSize) {
+			// A NEW FILE, OR ONE THAT DIED BEFORE ITS FIRST HEADER WAS DONE
+			file.setLength(0);
+			numRecords = 0;
+			compact();
+			return;
+		}
+
+		// DROP A RECORD THAT WAS ONLY PARTLY WRITTEN
+		long recordBytes = file.length() - headerSize;
+		numRecords = (int) (recordBytes / RECORD_SIZE);
+		if (recordBytes % RECORD_SIZE != 0) {
+			file.setLength(headerSize + (long) numRecords * RECORD_SIZE);
+		}
+
+		// TRUST THE HEADER ONLY IF IT WAS WRITTEN COMPLETELY
+		byte[] header = new byte[headerSize];
+		file.seek(0);
+		file.readFully(header);
+		ByteBuffer buffer = ByteBuffer.wrap(header);
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("Not a stats journal");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(header, 0, headerSize - 4);
+		boolean headerOk = buffer.getInt() == VERSION
+				&& buffer.getInt() == numLevels
+				&& (int) crc.getValue() == buffer.getInt(headerSize - 4);
+		int firstToReplay = 0;
+		if (headerOk) {
+			compactedRecords = buffer.getInt();
+			for (int i = 0; i < numLevels; i++) {
+				stats.restore(i + 1, buffer.getInt(), buffer.getInt(), buffer.getInt());
+			}
+			firstToReplay = compactedRecords;
+		}
+		if (!headerOk || compactedRecords > numRecords) {
+			clearSummary();
+			firstToReplay = 0;
+		}
+
+		// BRING THE SUMMARY UP TO DATE WITH THE NEWER RECORDS
+		ArrayList<int[]> newer = readRecords(firstToReplay);
+		for (int[] record : newer) {
+			summarize(record[0], record[1]);
+		}
+		if (!headerOk || numRecords - firstToReplay >= COMPACT_INTERVAL) {
+			compact();
+		}
+	}
+
+	// ACCESSOR METHODS
+	public int getNumLevels() {
+		return numLevels;
+	}
+
+	public int getNumRecords() {
+		return numRecords;
+	}
+
+	/**
+	 * Accessor method for the totals of every result in the journal, which
+	 * are kept up to date as results are recorded.
+	 *
+	 * @return The totals for each level.
+	 */
+	public StatsAggregator getStats() {
+		return stats;
+	}
+
+	/**
+	 * Appends the result of a game to the journal. This writes one record
+	 * at the end of the file, and now and then the header.
+	 *
+	 * @param level The level played, counting from 1.
+	 *
+	 * @param time How long the game took in seconds, negative if it was
+	 * lost.
+	 *
+	 * @throws IOException If the record can't be written.
+	 */
+	public void record(int level, int time) throws IOException {
+		if (level < 1 || level > numLevels) {
+			throw new IllegalArgumentException("No such level: " + level);
+		}
+		byte[] record = new byte[RECORD_SIZE];
+		ByteBuffer.wrap(record).putInt(level).putInt(time);
+		file.seek(headerSize + (long) numRecords * RECORD_SIZE);
+		file.write(record);
+		numRecords++;
+		summarize(level, time);
+		if (numRecords - compactedRecords >= COMPACT_INTERVAL) {
+			compact();
+		}
+	}
+
+	/**
+	 * Makes sure everything written so far is on the disk, not just in the
+	 * operating system's buffers.
+	 *
+	 * @throws IOException If the disk couldn't be synced.
+	 */
+	public void force() throws IOException {
+		file.getChannel().force(false);
+	}
+
+	/**
+	 * Rewrites the header to summarize every record in the file.
+	 *
+	 * @throws IOException If the header can't be written.
+	 */
+	public void compact() throws IOException {
+		// RECORDS MUST BE ON DISK BEFORE A HEADER THAT COUNTS THEM IS
+		force();
+		byte[] header = new byte[headerSize];
+		ByteBuffer buffer = ByteBuffer.wrap(header);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(numLevels).putInt(numRecords);
+		for (int i = 0; i < numLevels; i++) {
+			int level = i + 1;
+			buffer.putInt(stats.getPlayed(level)).putInt(stats.getWon(level)).putInt(stats.getFastest(level));
+		}
+		CRC32 crc = new CRC32();
+		crc.update(header, 0, headerSize - 4);
+		buffer.putInt((int) crc.getValue());
+		file.seek(0);
+		file.write(header);
+		force();
+		compactedRecords = numRecords;
+	}
+
+	/**
+	 * Reads every result in the order they were recorded.
+	 *
+	 * @return One list of times per level, where negative times were losses.
+	 *
+	 * @throws IOException If the records can't be read.
+	 */
+	public ArrayList<ArrayList<Integer>> readHistory() throws IOException {
+		ArrayList<ArrayList<Integer>> history = new ArrayList<ArrayList<Integer>>();
+		for (int i = 0; i < numLevels; i++) {
+			history.add(new ArrayList<Integer>());
+		}
+		for (int[] record : readRecords(0)) {
+			if (record[0] >= 1 && record[0] <= numLevels) {
+				history.get(record[0] - 1).add(record[1]);
+			}
+		}
+		return history;
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private ArrayList<int[]> readRecords(int first) throws IOException {
+		int count = numRecords - first;
+		byte[] bytes = new byte[count * RECORD_SIZE];
+		file.seek(headerSize + (long) first * RECORD_SIZE);
+		file.readFully(bytes);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		ArrayList<int[]> records = new ArrayList<int[]>(count);
+		for (int i = 0; i < count; i++) {
+			records.add(new int[] { buffer.getInt(), buffer.getInt() });
+		}
+		return records;
+	}
+
+	private void summarize(int level, int time) {
+		if (level < 1 || level > numLevels) {
+			return;
+		}
+		stats.record(level, time);
+	}
+
+	private void clearSummary() {
+		stats.clear();
+		compactedRecords = 0;
+	}
+}
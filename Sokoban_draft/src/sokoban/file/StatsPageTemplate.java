@@ -0,0 +1,158 @@
+package sokoban.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import sokoban.game.StatsAggregator;
+
+/**
+ * StatsPageTemplate fills in the stats page from its HTML template. The
+ * template is read and split into pieces once, where each piece is either
+ * plain text or one of the placeholders PLACEHOLDER_n_PLAYED, _WON,
+ * _PERCENTAGE or _FASTEST for level n. Rendering the page then just appends
+ * the pieces, with the placeholders filled in, to a single StringBuilder.
+ * Placeholders for levels the stats don't have are left as they are.
+ */
+public class StatsPageTemplate {
+
+	private static final String PLACEHOLDER_PREFIX = "PLACEHOLDER_";
+
+	/**
+	 * The values a placeholder can stand for.
+	 */
+	public enum Field {
+		PLAYED, WON, PERCENTAGE, FASTEST
+	}
+
+	private static final Field[] FIELDS = Field.values();
+
+	// A PIECE OF THE TEMPLATE. PLAIN TEXT HAS A text, PLACEHOLDERS
+	// HAVE A level AND field INSTEAD, ALONG WITH THEIR source TEXT
+	private static class Segment {
+		String text;
+		int level;
+		Field field;
+		String source;
+	}
+
+	private final ArrayList<Segment> segments = new ArrayList<Segment>();
+
+	// ROUGHLY HOW BIG THE PAGE WILL BE, SO THE BUILDER RARELY GROWS
+	private final int sizeHint;
+
+	/**
+	 * Reads and parses a template file.
+	 *
+	 * @param file The HTML template.
+	 *
+	 * @throws IOException If the template can't be read.
+	 */
+	public StatsPageTemplate(File file) throws IOException {
+		String html = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		sizeHint = html.length();
+		int textStart = 0;
+		int at = html.indexOf(PLACEHOLDER_PREFIX);
+		while (at >= 0) {
+			Segment placeholder = parsePlaceholder(html, at);
+			if (placeholder == null) {
+				// NOT ONE OF OURS, SO IT'S JUST TEXT
+				at = html.indexOf(PLACEHOLDER_PREFIX, at + 1);
+				continue;
+			}
+			addText(html.substring(textStart, at));
+			segments.add(placeholder);
+			textStart = at + placeholder.source.length();
+			at = html.indexOf(PLACEHOLDER_PREFIX, textStart);
+		}
+		addText(html.substring(textStart));
+	}
+
+	/**
+	 * Fills in the template.
+	 *
+	 * @param stats The totals to fill the placeholders in with.
+	 *
+	 * @return The finished page.
+	 */
+	public String render(StatsAggregator stats) {
+		StringBuilder page = new StringBuilder(sizeHint);
+		for (Segment segment : segments) {
+			if (segment.text != null) {
+				page.append(segment.text);
+			} else if (segment.level <= stats.getNumLevels()) {
+				appendValue(page, stats, segment.level, segment.field);
+			} else {
+				page.append(segment.source);
+			}
+		}
+		return page.toString();
+	}
+
+	private void appendValue(StringBuilder page, StatsAggregator stats, int level, Field field) {
+		int played = stats.getPlayed(level);
+		int wins = stats.getWon(level);
+		switch (field) {
+			case PLAYED:
+				page.append(played);
+				break;
+			case WON:
+				page.append(wins);
+				break;
+			case PERCENTAGE:
+				if (played != 0) {
+					page.append(((double) wins / played) * 100).append('%');
+				} else {
+					page.append('-');
+				}
+				break;
+			case FASTEST:
+				if (wins != 0) {
+					page.append(stats.getFastest(level)).append(" seconds");
+				} else {
+					page.append('-');
+				}
+				break;
+		}
+	}
+
+	private void addText(String text) {
+		if (!text.isEmpty()) {
+			Segment segment = new Segment();
+			segment.text = text;
+			segments.add(segment);
+		}
+	}
+
+	/**
+	 * Reads the placeholder starting at the at index, if there is one.
+	 *
+	 * @return The placeholder, or null if the text there isn't one.
+	 */
+	private static Segment parsePlaceholder(String html, int at) {
+		int i = at + PLACEHOLDER_PREFIX.length();
+		int level = 0;
+		int digitsStart = i;
+		while (i < html.length() && Character.isDigit(html.charAt(i)) && i - digitsStart < 9) {
+			level = level * 10 + (html.charAt(i) - '0');
+			i++;
+		}
+		if (i == digitsStart || level < 1 || i >= html.length() || html.charAt(i) != '_'
+				|| html.charAt(digitsStart) == '0') {
+			return null;
+		}
+		i++;
+		for (Field field : FIELDS) {
+			if (html.startsWith(field.name(), i)) {
+				Segment segment = new Segment();
+				segment.level = level;
+				segment.field = field;
+				segment.source = html.substring(at, i + field.name().length());
+				return segment;
+			}
+		}
+		return null;
+	}
+}
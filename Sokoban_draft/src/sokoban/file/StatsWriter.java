@@ -0,0 +1,169 @@
+package sokoban.file;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import sokoban.game.StatsAggregator;
+
+/**
+ * StatsWriter records game results in a StatsJournal on a background thread,
+ * so the JavaFX thread never waits on the disk when a game ends. The journal
+ * is opened on that thread too, as soon as the writer is made. There is only
+ * ever one writer thread, so the journal is opened before anything is written
+ * to it, and results reach it in the order they were submitted.
+ *
+ * Results that come in while a write is already waiting are added to it, so
+ * a burst of results costs a single sync of the journal rather than one each.
+ * Anything still waiting is written when the writer is shut down.
+ */
+public class StatsWriter {
+
+	// HOW MANY WRITES MAY BE WAITING. SINCE RESULTS ARE COALESCED THERE'S
+	// RARELY MORE THAN ONE
+	private static final int QUEUE_CAPACITY = 16;
+
+	// HOW LONG WE WAIT FOR THE LAST WRITES WHEN SHUTTING DOWN
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+	private final ThreadPoolExecutor executor;
+
+	// ONLY USED ON THE WRITER THREAD, OR ONCE IT HAS STOPPED. null IF THE
+	// JOURNAL COULDN'T BE OPENED
+	private StatsJournal journal;
+
+	// THE TOTALS IN THE JOURNAL WHEN IT WAS OPENED
+	private final Future<StatsAggregator> savedStats;
+
+	// CALLED ON THE WRITER THREAD IF A WRITE FAILS
+	private final Runnable errorHandler;
+
+	// RESULTS NOT YET WRITTEN, AS { level, time }, AND WHETHER A WRITE
+	// HAS ALREADY BEEN QUEUED TO TAKE CARE OF THEM. GUARDED BY this
+	private ArrayList<int[]> pending = new ArrayList<int[]>();
+	private boolean writeQueued;
+
+	/**
+	 * Starts the writer thread, which begins by opening the journal.
+	 *
+	 * @param journalOpener Opens the journal to record results in. It's
+	 * called on the writer thread, and only the writer thread uses what it
+	 * returns.
+	 *
+	 * @param initErrorHandler Run if a result couldn't be written.
+	 */
+	public StatsWriter(Callable<StatsJournal> journalOpener, Runnable initErrorHandler) {
+		errorHandler = initErrorHandler;
+		executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), r -> {
+					Thread thread = new Thread(r, "stats-writer");
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		savedStats = executor.submit(() -> {
+			journal = journalOpener.call();
+			// COPY THE TOTALS, SINCE THE JOURNAL KEEPS CHANGING ITS OWN
+			StatsAggregator saved = journal.getStats();
+			StatsAggregator copy = new StatsAggregator(saved.getNumLevels());
+			for (int level = 1; level <= saved.getNumLevels(); level++) {
+				copy.restore(level, saved.getPlayed(level), saved.getWon(level), saved.getFastest(level));
+			}
+			return copy;
+		});
+	}
+
+	/**
+	 * Accessor method for the totals that were in the journal when it was
+	 * opened, before any results were submitted to this writer. This waits
+	 * for the journal to be opened, if it hasn't been yet.
+	 *
+	 * @return The totals read from the journal.
+	 *
+	 * @throws IOException If the journal couldn't be opened.
+	 */
+	public StatsAggregator getSavedStats() throws IOException {
+		try {
+			return savedStats.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while opening the stats journal", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Queues a game result to be written. This returns right away.
+	 *
+	 * @param level The level played, counting from 1.
+	 *
+	 * @param time How long the game took in seconds, negative if lost.
+	 */
+	public void submit(int level, int time) {
+		synchronized (this) {
+			pending.add(new int[] { level, time });
+			if (writeQueued) {
+				return;
+			}
+			writeQueued = true;
+		}
+		executor.execute(this::writePending);
+	}
+
+	/**
+	 * Writes everything still waiting, then stops the writer thread and
+	 * closes the journal. Results submitted after this are dropped.
+	 *
+	 * If the writer thread doesn't stop in time the journal is left open,
+	 * since it may still be writing to it. Every batch is synced as it's
+	 * written, so the most this can lose is the batch being written.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		boolean stopped = false;
+		try {
+			stopped = executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (!stopped || journal == null) {
+			return;
+		}
+		try {
+			journal.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void writePending() {
+		ArrayList<int[]> batch;
+		synchronized (this) {
+			batch = pending;
+			pending = new ArrayList<int[]>();
+			writeQueued = false;
+		}
+		if (journal == null) {
+			// THE JOURNAL COULDN'T BE OPENED, SO THESE RESULTS ARE LOST
+			errorHandler.run();
+			return;
+		}
+		try {
+			for (int[] result : batch) {
+				journal.record(result[0], result[1]);
+			}
+			journal.force();
+		} catch (IOException e) {
+			e.printStackTrace();
+			errorHandler.run();
+		}
+	}
+}
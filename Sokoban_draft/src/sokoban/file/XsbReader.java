@@ -0,0 +1,260 @@
+package sokoban.file;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import sokoban.engine.GameState;
+
+/**
+ * XsbReader reads levels from collections in the standard text format used
+ * by most Sokoban programs, where each row of a level is a line of text:
+ *
+ * # wall, $ box, . goal, @ player, * box on a goal, + player on a goal, and
+ * a space, - or _ for floor
+ *
+ * Run-length encoded rows are also understood, where a number repeats the
+ * character after it and | starts a new row. Lines that aren't part of a
+ * level, like titles, comments and blank lines, separate levels.
+ *
+ * Levels are read one at a time as they're asked for, keeping only the lines
+ * of the current level in memory, so collections of any size may be read.
+ * Cells outside of the walls become EMPTY, just like in the level editor's
+ * files.
+ */
+public class XsbReader {
+
+	// THE CHARACTERS THAT MAY APPEAR IN A LEVEL ROW, BESIDES DIGITS
+	private static final String LEVEL_CHARS = "#@+$*. -_|pPbB";
+
+	// NO ROW MAY BE WIDER THAN THIS, SO A MALFORMED RUN LENGTH CAN'T ASK
+	// FOR A HUGE ROW
+	private static final int MAX_ROW_WIDTH = 1024;
+
+	private final BufferedReader reader;
+
+	// THE ROWS OF THE LEVEL BEING READ
+	private ArrayList<String> rows = new ArrayList<String>();
+
+	/**
+	 * Constructs a reader over a collection.
+	 *
+	 * @param in Where to read the collection from.
+	 */
+	public XsbReader(Reader in) {
+		reader = new BufferedReader(in);
+	}
+
+	/**
+	 * Constructs a reader over a collection file, which is read as UTF-8.
+	 *
+	 * @param file The collection to read.
+	 *
+	 * @throws IOException If the file can't be opened.
+	 */
+	public XsbReader(File file) throws IOException {
+		this(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Reads the next level in the collection.
+	 *
+	 * @return The cell values indexed by [column][row], or null if there are
+	 * no more levels.
+	 *
+	 * @throws IOException If the collection can't be read.
+	 */
+	public int[][] readLevel() throws IOException {
+		rows.clear();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (isLevelLine(line)) {
+				expandRow(line);
+			} else if (!rows.isEmpty()) {
+				break;
+			}
+		}
+		if (rows.isEmpty()) {
+			return null;
+		}
+		return buildLevel();
+	}
+
+	/**
+	 * Reads every level in a collection into a level pack, one at a time.
+	 *
+	 * @param collection The collection to read.
+	 *
+	 * @param pack Where to write the pack.
+	 *
+	 * @return The number of levels packed.
+	 *
+	 * @throws IOException If the collection can't be read or the pack
+	 * can't be written.
+	 */
+	public static int pack(File collection, File pack) throws IOException {
+		XsbReader in = new XsbReader(collection);
+		try {
+			LevelPackWriter out = new LevelPackWriter(pack);
+			try {
+				int[][] levelData;
+				while ((levelData = in.readLevel()) != null) {
+					out.addLevel(levelData);
+				}
+			} catch (IOException | RuntimeException e) {
+				out.abort();
+				throw e;
+			}
+			out.close();
+			return out.getNumLevels();
+		} finally {
+			in.close();
+		}
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Tests whether a line is a row of a level, rather than a title or a
+	 * comment. Rows only use the level characters, and have a wall in them.
+	 */
+	private static boolean isLevelLine(String line) {
+		boolean hasWall = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '#') {
+				hasWall = true;
+			} else if (!Character.isDigit(c) && LEVEL_CHARS.indexOf(c) < 0) {
+				return false;
+			}
+		}
+		return hasWall;
+	}
+
+	/**
+	 * Adds a line to the level's rows, undoing any run-length encoding.
+	 *
+	 * @throws IOException If a run is longer than a row may be.
+	 */
+	private void expandRow(String line) throws IOException {
+		StringBuilder row = new StringBuilder(line.length());
+		int count = 0;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (Character.isDigit(c)) {
+				count = count * 10 + (c - '0');
+				if (count > MAX_ROW_WIDTH) {
+					throw new IOException("Run length in \"" + line + "\" is wider than a row may be");
+				}
+			} else if (c == '|') {
+				rows.add(row.toString());
+				row.setLength(0);
+				count = 0;
+			} else {
+				for (int n = Math.max(count, 1); n > 0; n--) {
+					row.append(c);
+				}
+				if (row.length() > MAX_ROW_WIDTH) {
+					throw new IOException("Row in \"" + line + "\" is wider than a row may be");
+				}
+				count = 0;
+			}
+		}
+		rows.add(row.toString());
+	}
+
+	private int[][] buildLevel() {
+		int numRows = rows.size();
+		int numCols = 0;
+		for (String row : rows) {
+			numCols = Math.max(numCols, row.length());
+		}
+		int[][] levelData = new int[numCols][numRows];
+		int playerCol = -1;
+		int playerRow = -1;
+		for (int j = 0; j < numRows; j++) {
+			String row = rows.get(j);
+			for (int i = 0; i < row.length(); i++) {
+				levelData[i][j] = cellValue(row.charAt(i));
+				if (levelData[i][j] == GameState.PLAYER || levelData[i][j] == GameState.PLAYER_ON_GOAL) {
+					playerCol = i;
+					playerRow = j;
+				}
+			}
+		}
+		if (playerCol >= 0) {
+			markOutside(levelData, playerCol, playerRow);
+		}
+		return levelData;
+	}
+
+	private static int cellValue(char c) {
+		switch (c) {
+			case '#':
+				return GameState.WALL;
+			case '$':
+			case 'b':
+				return GameState.BOX;
+			case '.':
+				return GameState.GOAL;
+			case '@':
+			case 'p':
+				return GameState.PLAYER;
+			case '*':
+			case 'B':
+				return GameState.BOX_ON_GOAL;
+			case '+':
+			case 'P':
+				return GameState.PLAYER_ON_GOAL;
+			default:
+				return GameState.FLOOR;
+		}
+	}
+
+	/**
+	 * Floods out from the player through everything but walls. Plain floor
+	 * that can't be reached that way is outside the level, so it's made
+	 * EMPTY.
+	 */
+	private static void markOutside(int[][] levelData, int playerCol, int playerRow) {
+		int numCols = levelData.length;
+		int numRows = levelData[0].length;
+		boolean[] inside = new boolean[numCols * numRows];
+		int[] queue = new int[numCols * numRows];
+		int head = 0;
+		int tail = 0;
+		inside[playerCol * numRows + playerRow] = true;
+		queue[tail++] = playerCol * numRows + playerRow;
+		while (head < tail) {
+			int cell = queue[head++];
+			int col = cell / numRows;
+			int row = cell % numRows;
+			for (int d = 0; d < 4; d++) {
+				int toCol = col + (d == 0 ? -1 : d == 1 ? 1 : 0);
+				int toRow = row + (d == 2 ? -1 : d == 3 ? 1 : 0);
+				if (toCol < 0 || toCol >= numCols || toRow < 0 || toRow >= numRows) {
+					continue;
+				}
+				int next = toCol * numRows + toRow;
+				if (!inside[next] && levelData[toCol][toRow] != GameState.WALL) {
+					inside[next] = true;
+					queue[tail++] = next;
+				}
+			}
+		}
+		for (int i = 0; i < numCols; i++) {
+			for (int j = 0; j < numRows; j++) {
+				if (levelData[i][j] == GameState.FLOOR && !inside[i * numRows + j]) {
+					levelData[i][j] = GameState.EMPTY;
+				}
+			}
+		}
+	}
+}
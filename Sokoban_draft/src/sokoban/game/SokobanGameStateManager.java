@@ -36,6 +36,14 @@ public class SokobanGameStateManager {
     // IN PROGRESS IS NOT ADDED UNTIL IT IS COMPLETED
     private ArrayList<SokobanGameData> gamesHistory;
 
+    // RUNNING TOTALS OVER gamesHistory, KEPT UP TO DATE AS GAMES
+    // ARE ADDED SO THAT WE NEVER HAVE TO GO BACK THROUGH IT
+    private StatsAggregator sessionStats;
+    private SokobanGameData fastestWin;
+
+    // THE NUMBER OF LEVELS THERE ARE TO PLAY
+    private static final int NUM_LEVELS = 7;
+
     private final String NEWLINE_DELIMITER = "\n";
 
     public SokobanGameStateManager(SokobanUI initUI) {
@@ -47,6 +55,8 @@ public class SokobanGameStateManager {
         // NO GAMES HAVE BEEN PLAYED YET, BUT INITIALIZE
         // THE DATA STRCUTURE FOR PLACING COMPLETED GAMES
         gamesHistory = new ArrayList();
+        sessionStats = new StatsAggregator(NUM_LEVELS);
+        fastestWin = null;
 
         // THE FIRST GAME HAS NOT BEEN STARTED YET
         gameInProgress = null;
@@ -111,89 +121,62 @@ public class SokobanGameStateManager {
     }
 
     /**
-     * Counts and returns the number of wins during this game session.
+     * Accessor method for the totals of the games completed during this
+     * game session, for each level.
+     *
+     * @return The session's running totals.
+     */
+    public StatsAggregator getSessionStats() {
+        return sessionStats;
+    }
+
+    /**
+     * Accessor method for the number of wins during this game session.
      *
      * @return The number of games in that have been completed that the player
      * won.
      */
     public int getWins() {
-        // ITERATE THROUGH ALL THE COMPLETED GAMES
-        Iterator<SokobanGameData> it = gamesHistory.iterator();
-        int wins = 0;
-        while (it.hasNext()) {
-            // GET THE NEXT GAME IN THE SEQUENCE
-            SokobanGameData game = it.next();
-
-            // TODO
-            // IF IT ENDED IN A WIN, INC THE COUNTER
-            if (game.isWon()) {
-                wins++;
-            }
-        }
-        return wins;
+        return sessionStats.getTotalWon();
     }
 
     /**
-     * Counts and returns the number of losses during this game session.
+     * Accessor method for the number of losses during this game session.
      *
      * @return The number of games in that have been completed that the player
      * lost.
      */
     public int getLosses() {
-        // ITERATE THROUGH ALL THE COMPLETED GAMES
-        Iterator<SokobanGameData> it = gamesHistory.iterator();
-        int losses = 0;
-        while (it.hasNext()) {
-            // GET THE NEXT GAME IN THE SEQUENCE
-            SokobanGameData game = it.next();
-
-            // TODO
-            // IF IT ENDED IN A LOSS, INC THE COUNTER
-            if (game.isLost()) {
-                losses++;
-            }
-        }
-        return losses;
+        return sessionStats.getTotalLost();
     }
 
     /**
-     * Finds the completed game that the player won that required the least
-     * amount of time.
+     * Accessor method for the completed game that the player won that
+     * required the least amount of time.
      *
      * @return The completed game that the player won requiring the least amount
-     * of time.
+     * of time, or null if none have been won.
      */
     public SokobanGameData getFastestWin() {
-        // IF NO GAMES HAVE BEEN PLAYED, THERE IS
-        // NOTHING TO RETURN
-        if (gamesHistory.isEmpty()) {
-            return null;
-        }
+        return fastestWin;
+    }
 
-        // NOTE THAT ALL THE GAMES PLAYED MAY BE LOSSES
-        SokobanGameData fastest = null;
-
-        // GO THROUGH ALL THE GAMES THAT HAVE BEEN PLAYED
-        Iterator<SokobanGameData> it = gamesHistory.iterator();
-        while (it.hasNext()) {
-            // GET THE NEXT GAME IN THE SEQUENCE
-            SokobanGameData game = it.next();
-
-            // WE ONLY CONSIDER GAMES THAT WERE WON
-            if (game.isWon()) {
-                // IF IT'S THE FIRST WIN FOUND, START OUT
-                // WITH IT AS THE FASTEST UNTIL WE FIND ONE BETTER
-                if (fastest == null) {
-                    fastest = game;
-                } // OTHERWISE IF IT IS FASTER THEN
-                // MAKE IT THE FASTEST           
-                else if (game.getTimeOfGame() < fastest.getTimeOfGame()) {
-                    fastest = game;
-                }
+    /**
+     * Adds a completed game to the history, updating the running totals
+     * along with it.
+     */
+    private void addToHistory(SokobanGameData game) {
+        gamesHistory.add(game);
+        int time = (int) game.getTimeOfGame();
+        if (game.isWon()) {
+            // A WIN HAS TO COUNT AS ONE EVEN IF IT TOOK NO TIME
+            sessionStats.record(game.getLevel(), Math.max(time, 1));
+            if (fastestWin == null || game.getTimeOfGame() < fastestWin.getTimeOfGame()) {
+                fastestWin = game;
             }
+        } else {
+            sessionStats.record(game.getLevel(), -Math.abs(time));
         }
-        // RETURN THE FASTEST GAME
-        return fastest;
     }
 
     /**
@@ -206,7 +189,7 @@ public class SokobanGameStateManager {
         // IS THERE A GAME ALREADY UNDERWAY?
         // YES, SO END THAT GAME AS A LOSS
         if (!isGameNotStarted() && (!gamesHistory.contains(gameInProgress))) {
-            gamesHistory.add(gameInProgress);
+            addToHistory(gameInProgress);
         }
 
         // IF THERE IS A GAME IN PROGRESS AND THE PLAYER HASN'T WON, THAT MEANS
@@ -0,0 +1,141 @@
+package sokoban.game;
+
+/**
+ * StatsAggregator keeps running totals of game results for each level, the
+ * number played, the number won and the fastest win, updating them as each
+ * result comes in. Reading any of them never has to go back through the
+ * history of games, no matter how long it gets.
+ *
+ * Levels are counted from 1, and a result is a time in seconds, where a
+ * positive time is a win and anything else a loss, just like in the stats
+ * files.
+ */
+public class StatsAggregator {
+
+    // USED FOR THE FASTEST TIME OF A LEVEL THAT HAS NEVER BEEN WON
+    public static final int NO_TIME = Integer.MAX_VALUE;
+
+    // THE TOTALS, INDEXED BY LEVEL - 1
+    private final int[] played;
+    private final int[] won;
+    private final int[] fastest;
+
+    // THE SAME TOTALS OVER ALL LEVELS
+    private int totalPlayed;
+    private int totalWon;
+    private int totalFastest;
+
+    /**
+     * Constructs an aggregator with no results yet.
+     *
+     * @param numLevels The number of levels to keep totals for.
+     */
+    public StatsAggregator(int numLevels) {
+        played = new int[numLevels];
+        won = new int[numLevels];
+        fastest = new int[numLevels];
+        clear();
+    }
+
+    // ACCESSOR METHODS
+    public int getNumLevels() {
+        return played.length;
+    }
+
+    public int getPlayed(int level) {
+        return played[level - 1];
+    }
+
+    public int getWon(int level) {
+        return won[level - 1];
+    }
+
+    public int getLost(int level) {
+        return played[level - 1] - won[level - 1];
+    }
+
+    /**
+     * Accessor method for the quickest win of a level.
+     *
+     * @param level The level, counting from 1.
+     *
+     * @return The time in seconds, or NO_TIME if it's never been won.
+     */
+    public int getFastest(int level) {
+        return fastest[level - 1];
+    }
+
+    public int getTotalPlayed() {
+        return totalPlayed;
+    }
+
+    public int getTotalWon() {
+        return totalWon;
+    }
+
+    public int getTotalLost() {
+        return totalPlayed - totalWon;
+    }
+
+    public int getTotalFastest() {
+        return totalFastest;
+    }
+
+    // MUTATOR METHODS
+    /**
+     * Adds a game result to the totals.
+     *
+     * @param level The level played, counting from 1.
+     *
+     * @param time How long the game took in seconds, negative if it was
+     * lost.
+     */
+    public void record(int level, int time) {
+        played[level - 1]++;
+        totalPlayed++;
+        if (time > 0) {
+            won[level - 1]++;
+            totalWon++;
+            fastest[level - 1] = Math.min(fastest[level - 1], time);
+            totalFastest = Math.min(totalFastest, time);
+        }
+    }
+
+    /**
+     * Sets the totals of a level directly, for when they were saved
+     * somewhere rather than worked out from each result.
+     *
+     * @param level The level, counting from 1.
+     *
+     * @param levelPlayed The number of games played.
+     *
+     * @param levelWon The number of those that were won.
+     *
+     * @param levelFastest The fastest win, or NO_TIME if there were none.
+     */
+    public void restore(int level, int levelPlayed, int levelWon, int levelFastest) {
+        totalPlayed += levelPlayed - played[level - 1];
+        totalWon += levelWon - won[level - 1];
+        played[level - 1] = levelPlayed;
+        won[level - 1] = levelWon;
+        fastest[level - 1] = levelFastest;
+        totalFastest = NO_TIME;
+        for (int i = 0; i < fastest.length; i++) {
+            totalFastest = Math.min(totalFastest, fastest[i]);
+        }
+    }
+
+    /**
+     * Forgets every result.
+     */
+    public void clear() {
+        for (int i = 0; i < played.length; i++) {
+            played[i] = 0;
+            won[i] = 0;
+            fastest[i] = NO_TIME;
+        }
+        totalPlayed = 0;
+        totalWon = 0;
+        totalFastest = NO_TIME;
+    }
+}
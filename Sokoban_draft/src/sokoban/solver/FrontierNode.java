@@ -0,0 +1,29 @@
+package sokoban.solver;
+
+/**
+ * FrontierNode is a position near the top of the search tree, saved so a
+ * ParallelSearch can hand it to whichever worker is free. It keeps the
+ * pushes that led to it so a worker can carry on from there and still
+ * report the whole solution.
+ */
+class FrontierNode {
+
+    // THE POSITION
+    final long[] boxes;
+    final int player;
+
+    // THE PUSHES FROM THE START, PACKED AS box cell * 4 + direction
+    final int[] path;
+
+    // THE LOWER BOUND ON PUSHES STILL NEEDED, AND THE HASH OF THE POSITION
+    final int estimate;
+    final long hash;
+
+    FrontierNode(long[] initBoxes, int initPlayer, int[] initPath, int initEstimate, long initHash) {
+        boxes = initBoxes;
+        player = initPlayer;
+        path = initPath;
+        estimate = initEstimate;
+        hash = initHash;
+    }
+}
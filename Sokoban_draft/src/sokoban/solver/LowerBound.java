@@ -0,0 +1,208 @@
+package sokoban.solver;
+
+import java.util.Arrays;
+
+import sokoban.engine.Direction;
+import sokoban.engine.Level;
+
+/**
+ * LowerBound estimates how many pushes are still needed to solve a level.
+ * For every goal we precompute how many pushes it takes to get a box from any
+ * cell onto that goal when no other boxes are in the way. The estimate for a
+ * set of boxes is then the cheapest way of matching each box to its own goal,
+ * which never overestimates, so IDA* using it finds push-optimal solutions.
+ *
+ * Cells from which a box can't reach any goal at all are dead, and a state
+ * with a box on one can never be solved.
+ */
+class LowerBound {
+
+    // ANY DISTANCE THIS BIG MEANS THE GOAL CAN'T BE REACHED
+    static final int INFINITY = 1 << 20;
+
+    private final Level level;
+    private final int numGoals;
+
+    // distances[g][cell] IS THE NUMBER OF PUSHES NEEDED TO GET
+    // A BOX FROM cell ONTO THE g-TH GOAL
+    private final int[][] distances;
+
+    // THE SMALLEST OF THOSE FOR EACH CELL
+    private final int[] minDistances;
+
+    // SCRATCH SPACE FOR THE MATCHING, SO ESTIMATES DON'T ALLOCATE
+    private final int[][] costs;
+    private final int[] boxCells;
+    private final int[] u;
+    private final int[] v;
+    private final int[] match;
+    private final int[] way;
+    private final int[] minSlack;
+    private final boolean[] used;
+
+    LowerBound(Level initLevel) {
+        level = initLevel;
+        numGoals = level.getNumGoals();
+        int numCells = level.getNumCells();
+        distances = new int[numGoals][];
+        minDistances = new int[numCells];
+        Arrays.fill(minDistances, INFINITY);
+        int[] queue = new int[numCells];
+        int g = 0;
+        for (int cell = 0; cell < numCells; cell++) {
+            if (level.isGoal(cell)) {
+                distances[g] = pullDistances(cell, queue);
+                for (int i = 0; i < numCells; i++) {
+                    minDistances[i] = Math.min(minDistances[i], distances[g][i]);
+                }
+                g++;
+            }
+        }
+        costs = new int[numGoals + 1][numGoals + 1];
+        boxCells = new int[numGoals];
+        u = new int[numGoals + 1];
+        v = new int[numGoals + 1];
+        match = new int[numGoals + 1];
+        way = new int[numGoals + 1];
+        minSlack = new int[numGoals + 1];
+        used = new boolean[numGoals + 1];
+    }
+
+    /**
+     * Tests whether a box on the cell can never reach a goal.
+     *
+     * @param cell The cell to test.
+     *
+     * @return true if a box there makes the level unsolvable.
+     */
+    boolean isDead(int cell) {
+        return minDistances[cell] >= INFINITY;
+    }
+
+    /**
+     * Estimates the number of pushes still needed to get every box onto a
+     * goal. This is the cost of the cheapest matching of boxes to goals.
+     *
+     * @param boxes One bit per cell, set where there is a box.
+     *
+     * @return The estimate, or INFINITY if the boxes can't all be matched
+     * to goals they can reach.
+     */
+    int estimate(long[] boxes) {
+        // GATHER THE BOXES, GIVING UP EARLY ON ANY DEAD ONE
+        int numBoxes = 0;
+        for (int w = 0; w < boxes.length; w++) {
+            long bits = boxes[w];
+            while (bits != 0) {
+                int cell = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (numBoxes == numGoals || isDead(cell)) {
+                    return INFINITY;
+                }
+                boxCells[numBoxes++] = cell;
+            }
+        }
+        if (numBoxes == 0) {
+            return 0;
+        }
+
+        // BOXES ARE ROWS AND GOALS ARE COLUMNS, BOTH COUNTED FROM 1
+        for (int i = 0; i < numBoxes; i++) {
+            for (int j = 0; j < numGoals; j++) {
+                costs[i + 1][j + 1] = distances[j][boxCells[i]];
+            }
+        }
+        int cost = minimumMatching(numBoxes);
+        return cost >= INFINITY ? INFINITY : cost;
+    }
+
+    /**
+     * The Hungarian method for a numRows by numGoals cost matrix, with
+     * numRows no bigger than numGoals, as described by e-maxx. It runs in
+     * O(numRows * numGoals^2) time using only the scratch arrays.
+     */
+    private int minimumMatching(int numRows) {
+        int m = numGoals;
+        for (int j = 0; j <= m; j++) {
+            u[j] = 0;
+            v[j] = 0;
+            match[j] = 0;
+            way[j] = 0;
+        }
+        for (int i = 1; i <= numRows; i++) {
+            match[0] = i;
+            int j0 = 0;
+            for (int j = 0; j <= m; j++) {
+                minSlack[j] = Integer.MAX_VALUE;
+                used[j] = false;
+            }
+            do {
+                used[j0] = true;
+                int i0 = match[j0];
+                int delta = Integer.MAX_VALUE;
+                int j1 = 0;
+                for (int j = 1; j <= m; j++) {
+                    if (!used[j]) {
+                        int cur = costs[i0][j] - u[i0] - v[j];
+                        if (cur < minSlack[j]) {
+                            minSlack[j] = cur;
+                            way[j] = j0;
+                        }
+                        if (minSlack[j] < delta) {
+                            delta = minSlack[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[match[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minSlack[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (match[j0] != 0);
+            do {
+                int j1 = way[j0];
+                match[j0] = match[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+        return -v[0];
+    }
+
+    /**
+     * Works backwards from a goal, pulling a box away from it in every
+     * direction the player has room to pull from, to find how many pushes
+     * each cell is from the goal.
+     */
+    private int[] pullDistances(int goal, int[] queue) {
+        int[] dist = new int[level.getNumCells()];
+        Arrays.fill(dist, INFINITY);
+        dist[goal] = 0;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = goal;
+        while (head < tail) {
+            int box = queue[head++];
+            for (Direction dir : Direction.values()) {
+                // THE BOX COMES FROM THE dir SIDE, WITH THE PLAYER BEHIND IT
+                int from = level.neighbor(box, dir);
+                if (from < 0 || !level.isFloor(from)) {
+                    continue;
+                }
+                int playerAt = level.neighbor(from, dir);
+                if (playerAt < 0 || !level.isFloor(playerAt)) {
+                    continue;
+                }
+                if (dist[from] == INFINITY) {
+                    dist[from] = dist[box] + 1;
+                    queue[tail++] = from;
+                }
+            }
+        }
+        return dist;
+    }
+}
@@ -0,0 +1,207 @@
+package sokoban.solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+import sokoban.engine.Level;
+import sokoban.engine.StripedTranspositionTable;
+
+/**
+ * ParallelSearch runs the SokobanSolver search on several threads at once.
+ * The top of the tree is first expanded breadth first until there are plenty
+ * of positions for every thread, then each IDA* iteration searches all of
+ * those positions as tasks on a fork-join pool, so a thread that runs out of
+ * work steals some from a busier one. Each pool thread has its own solver as
+ * a worker, and the workers share one StripedTranspositionTable, so a
+ * position one worker has searched is skipped by the rest.
+ *
+ * Since every position within the bound is still searched in each iteration,
+ * the first solution found is as short as the serial search's would be.
+ */
+class ParallelSearch {
+
+    // HOW MANY TOP OF THE TREE POSITIONS WE WANT FOR EACH THREAD, SO THAT
+    // THE WORK STAYS EVEN AS SOME POSITIONS TURN OUT TO BE MUCH BIGGER
+    private static final int NODES_PER_THREAD = 16;
+
+    private final SolverConfig config;
+    private final Level level;
+    private final long startTime;
+
+    // THE STATES SEEN BY EVERY WORKER THIS ITERATION
+    private final StripedTranspositionTable seen;
+
+    // SET WHEN THE WORKERS SHOULD STOP, AND TO THE WORKER THAT SOLVED THE
+    // LEVEL IF THAT'S WHY
+    private final AtomicReference<SolverResult.Status> stop = new AtomicReference<SolverResult.Status>();
+    private final AtomicReference<SokobanSolver> winner = new AtomicReference<SokobanSolver>();
+
+    // EVERY WORKER, SO THEIR STATISTICS CAN BE ADDED UP AT THE END
+    private final List<SokobanSolver> workers = Collections.synchronizedList(new ArrayList<SokobanSolver>());
+    private final ThreadLocal<SokobanSolver> workerOfThread;
+
+    /**
+     * Sets up a parallel search of a level.
+     *
+     * @param initConfig The budgets, thread count and table size to use.
+     *
+     * @param initLevel The level to solve, which must have a player.
+     */
+    ParallelSearch(SolverConfig initConfig, Level initLevel) {
+        config = initConfig;
+        level = initLevel;
+        startTime = System.currentTimeMillis();
+        seen = new StripedTranspositionTable(config.getTranspositionTableBits(), config.getReplacementPolicy());
+        workerOfThread = ThreadLocal.withInitial(() -> {
+            SokobanSolver worker = new SokobanSolver(config);
+            worker.prepare(level, startTime);
+            worker.joinParallelSearch(seen, stop);
+            workers.add(worker);
+            return worker;
+        });
+    }
+
+    /**
+     * Searches for a push-optimal solution.
+     *
+     * @return How the search went, including the solution if one was found.
+     */
+    SolverResult solve() {
+        SokobanSolver splitter = new SokobanSolver(config);
+        splitter.prepare(level, startTime);
+        workers.add(splitter);
+
+        // EXPAND THE TOP OF THE TREE ONE DEPTH AT A TIME, SO A SOLUTION
+        // FOUND ALONG THE WAY IS THE SHORTEST THERE IS
+        FrontierNode root = splitter.rootNode();
+        if (root.estimate >= LowerBound.INFINITY) {
+            return finish(SolverResult.Status.UNSOLVABLE, null, 0);
+        }
+        ArrayList<FrontierNode> frontier = new ArrayList<FrontierNode>();
+        frontier.add(root);
+        HashSet<Long> expanded = new HashSet<Long>();
+        expanded.add(root.hash);
+        int wanted = config.getNumThreads() * NODES_PER_THREAD;
+        while (true) {
+            for (FrontierNode node : frontier) {
+                if (node.estimate == 0) {
+                    return finish(SolverResult.Status.SOLVED, splitter.buildSolution(node.path),
+                            node.path.length);
+                }
+            }
+            if (frontier.size() >= wanted) {
+                break;
+            }
+            ArrayList<FrontierNode> children = new ArrayList<FrontierNode>();
+            ArrayList<FrontierNode> next = new ArrayList<FrontierNode>();
+            for (FrontierNode node : frontier) {
+                children.clear();
+                splitter.expand(node, children);
+                for (FrontierNode child : children) {
+                    if (expanded.add(child.hash)) {
+                        next.add(child);
+                    }
+                }
+            }
+            if (next.isEmpty()) {
+                return finish(SolverResult.Status.UNSOLVABLE, null, 0);
+            }
+            if (System.currentTimeMillis() - startTime > config.getTimeBudgetMillis()) {
+                return finish(SolverResult.Status.TIMED_OUT, null, 0);
+            }
+            frontier = next;
+        }
+
+        // NOW DEEPEN FROM ALL OF THOSE POSITIONS AT ONCE
+        int bound = LowerBound.INFINITY;
+        for (FrontierNode node : frontier) {
+            bound = Math.min(bound, node.path.length + node.estimate);
+        }
+        ForkJoinPool pool = new ForkJoinPool(config.getNumThreads());
+        try {
+            while (bound < LowerBound.INFINITY) {
+                seen.clear();
+                int next = pool.invoke(new IterationTask(frontier, 0, frontier.size(), bound));
+                SokobanSolver solvedBy = winner.get();
+                if (solvedBy != null) {
+                    return finish(SolverResult.Status.SOLVED, solvedBy.buildFoundSolution(),
+                            solvedBy.getSolutionLength());
+                }
+                if (stop.get() != null) {
+                    return finish(stop.get(), null, 0);
+                }
+                bound = next;
+            }
+            return finish(SolverResult.Status.UNSOLVABLE, null, 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Searches a run of frontier positions within the bound, splitting the
+     * run in half until each task has a single position.
+     */
+    private class IterationTask extends RecursiveTask<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<FrontierNode> frontier;
+        private final int start;
+        private final int end;
+        private final int bound;
+
+        IterationTask(List<FrontierNode> initFrontier, int initStart, int initEnd, int initBound) {
+            frontier = initFrontier;
+            start = initStart;
+            end = initEnd;
+            bound = initBound;
+        }
+
+        /**
+         * @return The smallest estimate over the bound in this run.
+         */
+        @Override
+        protected Integer compute() {
+            if (end - start == 1) {
+                if (stop.get() != null) {
+                    return LowerBound.INFINITY;
+                }
+                SokobanSolver worker = workerOfThread.get();
+                int result = worker.searchFrom(frontier.get(start), bound);
+                if (result == SokobanSolver.FOUND) {
+                    winner.compareAndSet(null, worker);
+                    return LowerBound.INFINITY;
+                }
+                return result;
+            }
+            int middle = (start + end) >>> 1;
+            IterationTask left = new IterationTask(frontier, start, middle, bound);
+            IterationTask right = new IterationTask(frontier, middle, end, bound);
+            left.fork();
+            int rightResult = right.compute();
+            return Math.min(left.join(), rightResult);
+        }
+    }
+
+    private SolverResult finish(SolverResult.Status status, String solution, int numPushes) {
+        long nodes = 0;
+        long peakMemory = 0;
+        synchronized (workers) {
+            for (SokobanSolver worker : workers) {
+                nodes += worker.getNodes();
+                peakMemory = Math.max(peakMemory, worker.getPeakMemory());
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        peakMemory = Math.max(peakMemory, runtime.totalMemory() - runtime.freeMemory());
+        long elapsed = System.currentTimeMillis() - startTime;
+        return new SolverResult(status, solution, numPushes, nodes, elapsed, peakMemory,
+                config.getNumThreads());
+    }
+}
@@ -0,0 +1,552 @@
+package sokoban.solver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import sokoban.engine.DeadlockDetector;
+import sokoban.engine.Direction;
+import sokoban.engine.Level;
+import sokoban.engine.OffHeapStateTable;
+import sokoban.engine.StripedTranspositionTable;
+import sokoban.engine.TranspositionTable;
+import sokoban.engine.ZobristKeys;
+import sokoban.file.SokobanFileLoader;
+
+/**
+ * SokobanSolver finds push-optimal solutions for Sokoban levels. It runs an
+ * IDA* search over pushes, where the player may walk anywhere it can reach
+ * for free between pushes, guided by the box-to-goal matching LowerBound.
+ * States reached again within an iteration with no fewer pushes are cut off,
+ * using a TranspositionTable keyed by the Zobrist hash of the boxes and the
+ * region the player can walk around in, or an OffHeapStateTable holding them
+ * exactly if the config asks for one. Pushes that freeze boxes in place
+ * off their goals are never searched.
+ *
+ * When the config asks for more than one thread, the search is split across
+ * a fork-join pool instead, see ParallelSearch. Either way a solver instance
+ * keeps scratch space for the level it's solving, so it should only be used
+ * by one thread at a time.
+ *
+ * @see SolverConfig
+ */
+public class SokobanSolver {
+
+    // RETURNED BY THE SEARCH WHEN A SOLUTION HAS BEEN FOUND
+    static final int FOUND = -1;
+
+    // HOW OFTEN, IN NODES, WE CHECK THE TIME AND MEMORY BUDGETS
+    private static final int BUDGET_CHECK_INTERVAL = 1024;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final char[] STEP_LETTERS = {'l', 'r', 'u', 'd'};
+    private static final char[] PUSH_LETTERS = {'L', 'R', 'U', 'D'};
+
+    private final SolverConfig config;
+
+    // THE LEVEL BEING SOLVED AND ITS PUSH DISTANCES
+    private Level level;
+    private LowerBound lowerBound;
+    private DeadlockDetector deadlocks;
+    private ZobristKeys keys;
+
+    // THE STATE OF THE SEARCH AS IT WALKS DOWN THE TREE
+    private long[] boxes;
+    private long boxHash;
+    private int player;
+    private int[] path;
+    private int[][] pushesByDepth;
+    private int solutionLength;
+
+    // STATES SEEN THIS ITERATION, AND THE FEWEST PUSHES THEY WERE SEEN WITH
+    private TranspositionTable seen;
+
+    // USED INSTEAD OF seen WHEN THE CONFIG ASKS FOR THE OFF-HEAP STORE
+    private OffHeapStateTable offHeapSeen;
+
+    // WHEN THIS SOLVER IS ONE WORKER OF A PARALLEL SEARCH, THE STATES SEEN
+    // BY ALL OF THE WORKERS, AND WHY THE WORKERS WERE TOLD TO STOP, IF THEY
+    // HAVE BEEN
+    private StripedTranspositionTable sharedSeen;
+    private AtomicReference<SolverResult.Status> sharedStop;
+
+    // SCRATCH SPACE FOR FINDING WHERE THE PLAYER CAN WALK
+    private int[] reachMarks;
+    private int reachStamp;
+    private int[] queue;
+
+    // SEARCH STATISTICS AND LIMITS
+    private long nodes;
+    private long startTime;
+    private long peakMemory;
+    private SolverResult.Status abortStatus;
+
+    /**
+     * Constructs a solver using the default budgets.
+     */
+    public SokobanSolver() {
+        this(new SolverConfig());
+    }
+
+    /**
+     * Constructs a solver with the given budgets.
+     *
+     * @param initConfig The time and memory limits for each search.
+     */
+    public SokobanSolver(SolverConfig initConfig) {
+        config = initConfig;
+    }
+
+    /**
+     * Loads a level file from the data directory and solves it.
+     *
+     * @param fileName Name of the .sok file, like level1.sok.
+     *
+     * @return How the search went, including the solution if one was found.
+     *
+     * @throws IOException If the level file can't be read.
+     */
+    public SolverResult solve(String fileName) throws IOException {
+        return solve(new Level(SokobanFileLoader.readLevel(new File("data/" + fileName))));
+    }
+
+    /**
+     * Searches for a push-optimal solution to the level.
+     *
+     * @param initLevel The level to solve, from its starting position.
+     *
+     * @return How the search went, including the solution if one was found.
+     */
+    public SolverResult solve(Level initLevel) {
+        if (config.getNumThreads() > 1 && initLevel.getInitialPlayer() >= 0) {
+            return new ParallelSearch(config, initLevel).solve();
+        }
+        prepare(initLevel, System.currentTimeMillis());
+        if (level.getInitialPlayer() < 0) {
+            return finish(SolverResult.Status.UNSOLVABLE, null, 0);
+        }
+        offHeapSeen = null;
+        if (config.getVisitedStore() == SolverConfig.VisitedStore.OFF_HEAP) {
+            offHeapSeen = new OffHeapStateTable(level.getNumCells(), level.getNumBoxes(),
+                    config.getOffHeapBudgetBytes(), config.getSpillDirectory());
+        } else if (seen == null || seen.getCapacity() != 1 << config.getTranspositionTableBits()) {
+            seen = new TranspositionTable(config.getTranspositionTableBits(),
+                    config.getReplacementPolicy());
+        }
+
+        // KEEP DEEPENING UNTIL WE FIND A SOLUTION OR RUN OUT OF STATES
+        int bound = lowerBound.estimate(boxes);
+        while (bound < LowerBound.INFINITY) {
+            if (offHeapSeen != null) {
+                offHeapSeen.clear();
+            } else {
+                seen.clear();
+            }
+            int next = search(0, bound);
+            if (next == FOUND) {
+                return finish(SolverResult.Status.SOLVED, buildSolution(solutionLength),
+                        solutionLength);
+            }
+            if (abortStatus != null) {
+                return finish(abortStatus, null, 0);
+            }
+            bound = next;
+        }
+        return finish(SolverResult.Status.UNSOLVABLE, null, 0);
+    }
+
+    /**
+     * Sets up the search state and scratch space for a level, starting from
+     * its initial position.
+     *
+     * @param initLevel The level to solve.
+     *
+     * @param initStartTime When the search began, for the time budget.
+     */
+    void prepare(Level initLevel, long initStartTime) {
+        level = initLevel;
+        startTime = initStartTime;
+        nodes = 0;
+        peakMemory = 0;
+        abortStatus = null;
+        if (level.getInitialPlayer() < 0) {
+            return;
+        }
+        lowerBound = new LowerBound(level);
+        deadlocks = new DeadlockDetector(level);
+        keys = level.getZobristKeys();
+        boxes = level.copyInitialBoxes();
+        boxHash = keys.hashBoxes(boxes);
+        player = level.getInitialPlayer();
+        reachMarks = new int[level.getNumCells()];
+        reachStamp = 0;
+        queue = new int[level.getNumCells()];
+        path = new int[16];
+        pushesByDepth = new int[16][];
+    }
+
+    /**
+     * Makes this solver a worker of a parallel search, which checks states
+     * against the shared table rather than its own, and stops when told to.
+     *
+     * @param initSharedSeen The states seen by all of the workers.
+     *
+     * @param initSharedStop Set once the workers should stop, to SOLVED or
+     * to whichever budget ran out.
+     */
+    void joinParallelSearch(StripedTranspositionTable initSharedSeen,
+            AtomicReference<SolverResult.Status> initSharedStop) {
+        sharedSeen = initSharedSeen;
+        sharedStop = initSharedStop;
+    }
+
+    /**
+     * Runs one IDA* iteration from a position part way down the tree, as a
+     * worker of a parallel search.
+     *
+     * @param node The position to start from.
+     *
+     * @param bound The most pushes a solution may take this iteration.
+     *
+     * @return FOUND if a solution was found, otherwise the smallest estimate
+     * over the bound.
+     */
+    int searchFrom(FrontierNode node, int bound) {
+        abortStatus = null;
+        System.arraycopy(node.boxes, 0, boxes, 0, boxes.length);
+        boxHash = keys.hashBoxes(boxes);
+        player = node.player;
+        int depth = node.path.length;
+        ensurePathCapacity(depth);
+        System.arraycopy(node.path, 0, path, 0, depth);
+        int result = search(depth, bound);
+        if (result == FOUND) {
+            sharedStop.compareAndSet(null, SolverResult.Status.SOLVED);
+        }
+        return result;
+    }
+
+    /**
+     * Builds the node for the level's starting position, which is where a
+     * parallel search starts splitting up the tree.
+     */
+    FrontierNode rootNode() {
+        boxes = level.copyInitialBoxes();
+        long hash = keys.hashBoxes(boxes) ^ keys.playerKey(markReachable(level.getInitialPlayer()));
+        return new FrontierNode(boxes.clone(), level.getInitialPlayer(), new int[0],
+                lowerBound.estimate(boxes), hash);
+    }
+
+    /**
+     * Finds the positions one push away from a node, skipping pushes into
+     * deadlocks and positions that can't be solved.
+     *
+     * @param node The position to expand.
+     *
+     * @param children Where to add the positions it leads to.
+     */
+    void expand(FrontierNode node, List<FrontierNode> children) {
+        nodes++;
+        System.arraycopy(node.boxes, 0, boxes, 0, boxes.length);
+        markReachable(node.player);
+        int numPushes = listPushes(0);
+        int[] pushes = pushesByDepth[0];
+        for (int i = 0; i < numPushes; i++) {
+            int push = pushes[i];
+            int box = push >>> 2;
+            int to = level.neighbor(box, DIRECTIONS[push & 3]);
+            Level.clear(boxes, box);
+            Level.set(boxes, to);
+            int h = deadlocks.isDeadlocked(boxes, to) ? LowerBound.INFINITY : lowerBound.estimate(boxes);
+            if (h < LowerBound.INFINITY) {
+                int[] childPath = Arrays.copyOf(node.path, node.path.length + 1);
+                childPath[node.path.length] = push;
+                long hash = keys.hashBoxes(boxes) ^ keys.playerKey(markReachable(box));
+                children.add(new FrontierNode(boxes.clone(), box, childPath, h, hash));
+            }
+            Level.clear(boxes, to);
+            Level.set(boxes, box);
+        }
+    }
+
+    // ACCESSOR METHODS FOR PARALLEL SEARCH
+    long getNodes() {
+        return nodes;
+    }
+
+    long getPeakMemory() {
+        return peakMemory;
+    }
+
+    int getSolutionLength() {
+        return solutionLength;
+    }
+
+    /**
+     * Builds the moves for a solution this solver found, or was given.
+     *
+     * @param solutionPath The pushes of the solution.
+     */
+    String buildSolution(int[] solutionPath) {
+        ensurePathCapacity(solutionPath.length);
+        System.arraycopy(solutionPath, 0, path, 0, solutionPath.length);
+        return buildSolution(solutionPath.length);
+    }
+
+    /**
+     * The moves of the solution this solver found.
+     */
+    String buildFoundSolution() {
+        return buildSolution(solutionLength);
+    }
+
+    /**
+     * One step of IDA*. Returns FOUND if the level was solved with no more
+     * than bound pushes, otherwise the smallest estimated total that went
+     * over the bound.
+     */
+    private int search(int depth, int bound) {
+        nodes++;
+        if (nodes % BUDGET_CHECK_INTERVAL == 0 && overBudget()) {
+            return LowerBound.INFINITY;
+        }
+        int h = lowerBound.estimate(boxes);
+        if (h >= LowerBound.INFINITY) {
+            return LowerBound.INFINITY;
+        }
+        if (depth + h > bound) {
+            return depth + h;
+        }
+        if (h == 0) {
+            solutionLength = depth;
+            return FOUND;
+        }
+
+        // SKIP STATES WE'VE ALREADY SEARCHED WITH AT LEAST AS MUCH ROOM
+        int region = markReachable(player);
+        if (!markSeen(boxHash ^ keys.playerKey(region), region, depth)) {
+            return LowerBound.INFINITY;
+        }
+
+        // LIST EVERY PUSH THE PLAYER CAN GET TO
+        int numPushes = listPushes(depth);
+        int[] pushes = pushesByDepth[depth];
+        int min = LowerBound.INFINITY;
+        for (int i = 0; i < numPushes; i++) {
+            int push = pushes[i];
+            int box = push >>> 2;
+            Direction dir = DIRECTIONS[push & 3];
+            int to = level.neighbor(box, dir);
+            int oldPlayer = player;
+
+            // MAKE THE PUSH, SEARCH, AND TAKE IT BACK
+            long pushHash = keys.boxKey(box) ^ keys.boxKey(to);
+            Level.clear(boxes, box);
+            Level.set(boxes, to);
+            if (deadlocks.isDeadlocked(boxes, to)) {
+                Level.clear(boxes, to);
+                Level.set(boxes, box);
+                continue;
+            }
+            boxHash ^= pushHash;
+            player = box;
+            ensurePathCapacity(depth);
+            path[depth] = push;
+            int result = search(depth + 1, bound);
+            Level.clear(boxes, to);
+            Level.set(boxes, box);
+            boxHash ^= pushHash;
+            player = oldPlayer;
+            if (result == FOUND) {
+                return FOUND;
+            }
+            if (abortStatus != null) {
+                return LowerBound.INFINITY;
+            }
+            min = Math.min(min, result);
+        }
+        return min;
+    }
+
+    /**
+     * Remembers that a state was reached at some depth.
+     *
+     * @return false if it was already reached no deeper this iteration, so
+     * there's no need to search it again.
+     */
+    private boolean markSeen(long hash, int region, int depth) {
+        if (sharedSeen != null) {
+            return sharedSeen.visit(hash, depth);
+        }
+        if (offHeapSeen != null) {
+            return offHeapSeen.visit(boxes, region, depth);
+        }
+        long seenDepth = seen.get(hash);
+        if (seenDepth != TranspositionTable.NOT_FOUND && seenDepth <= depth) {
+            return false;
+        }
+        seen.put(hash, depth);
+        return true;
+    }
+
+    /**
+     * Fills pushesByDepth[depth] with every push the player can currently
+     * walk to, packed as box cell * 4 + direction. Uses the marks left by
+     * the last call to markReachable.
+     */
+    private int listPushes(int depth) {
+        if (depth >= pushesByDepth.length) {
+            pushesByDepth = Arrays.copyOf(pushesByDepth, depth * 2);
+        }
+        int[] pushes = pushesByDepth[depth];
+        if (pushes == null) {
+            pushes = new int[level.getNumGoals() * DIRECTIONS.length];
+            pushesByDepth[depth] = pushes;
+        }
+        int count = 0;
+        for (int w = 0; w < boxes.length; w++) {
+            long bits = boxes[w];
+            while (bits != 0) {
+                int box = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                for (Direction dir : DIRECTIONS) {
+                    int from = level.neighbor(box, dir.opposite());
+                    if (from < 0 || reachMarks[from] != reachStamp) {
+                        continue;
+                    }
+                    int to = level.neighbor(box, dir);
+                    if (to < 0 || !level.isFloor(to) || Level.isSet(boxes, to)
+                            || lowerBound.isDead(to)) {
+                        continue;
+                    }
+                    pushes[count++] = (box << 2) | dir.ordinal();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Marks every cell the player can walk to from the start cell without
+     * pushing anything.
+     *
+     * @return The smallest such cell, which identifies the whole region.
+     */
+    private int markReachable(int start) {
+        reachStamp++;
+        int head = 0;
+        int tail = 0;
+        int smallest = start;
+        reachMarks[start] = reachStamp;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (Direction dir : DIRECTIONS) {
+                int next = level.neighbor(cell, dir);
+                if (next >= 0 && reachMarks[next] != reachStamp && level.isFloor(next)
+                        && !Level.isSet(boxes, next)) {
+                    reachMarks[next] = reachStamp;
+                    queue[tail++] = next;
+                    smallest = Math.min(smallest, next);
+                }
+            }
+        }
+        return smallest;
+    }
+
+    /**
+     * Replays the pushes on the path from the start, working out the walks
+     * in between, to produce the full list of moves.
+     */
+    private String buildSolution(int numPushes) {
+        boxes = level.copyInitialBoxes();
+        player = level.getInitialPlayer();
+        StringBuilder moves = new StringBuilder();
+        int[] cameFrom = new int[level.getNumCells()];
+        for (int i = 0; i < numPushes; i++) {
+            int box = path[i] >>> 2;
+            Direction dir = DIRECTIONS[path[i] & 3];
+            int from = level.neighbor(box, dir.opposite());
+            appendWalk(moves, from, cameFrom);
+            moves.append(PUSH_LETTERS[dir.ordinal()]);
+            Level.clear(boxes, box);
+            Level.set(boxes, level.neighbor(box, dir));
+            player = box;
+        }
+        return moves.toString();
+    }
+
+    /**
+     * Appends the shortest walk from the player's cell to the target cell.
+     */
+    private void appendWalk(StringBuilder moves, int target, int[] cameFrom) {
+        reachStamp++;
+        int head = 0;
+        int tail = 0;
+        reachMarks[player] = reachStamp;
+        queue[tail++] = player;
+        while (head < tail && reachMarks[target] != reachStamp) {
+            int cell = queue[head++];
+            for (Direction dir : DIRECTIONS) {
+                int next = level.neighbor(cell, dir);
+                if (next >= 0 && reachMarks[next] != reachStamp && level.isFloor(next)
+                        && !Level.isSet(boxes, next)) {
+                    reachMarks[next] = reachStamp;
+                    cameFrom[next] = (cell << 2) | dir.ordinal();
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        // WALK BACK FROM THE TARGET, THEN ADD THE STEPS IN ORDER
+        StringBuilder steps = new StringBuilder();
+        for (int cell = target; cell != player; cell = cameFrom[cell] >>> 2) {
+            steps.append(STEP_LETTERS[cameFrom[cell] & 3]);
+        }
+        moves.append(steps.reverse());
+        player = target;
+    }
+
+    private void ensurePathCapacity(int depth) {
+        if (depth >= path.length) {
+            path = Arrays.copyOf(path, depth * 2);
+        }
+    }
+
+    /**
+     * Checks the time and memory budgets, remembering why we stopped if
+     * either has run out. In a parallel search, running out stops all of
+     * the workers, and so does any other worker stopping.
+     */
+    private boolean overBudget() {
+        long usedMemory = sampleMemory();
+        if (System.currentTimeMillis() - startTime > config.getTimeBudgetMillis()) {
+            abortStatus = SolverResult.Status.TIMED_OUT;
+        } else if (usedMemory > config.getMemoryBudgetBytes()
+                || (offHeapSeen != null && offHeapSeen.isOutOfRoom())) {
+            abortStatus = SolverResult.Status.OUT_OF_MEMORY;
+        }
+        if (sharedStop != null) {
+            if (abortStatus != null) {
+                sharedStop.compareAndSet(null, abortStatus);
+            }
+            abortStatus = sharedStop.get();
+        }
+        return abortStatus != null;
+    }
+
+    private long sampleMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        peakMemory = Math.max(peakMemory, used);
+        return used;
+    }
+
+    private SolverResult finish(SolverResult.Status status, String solution, int numPushes) {
+        sampleMemory();
+        long elapsed = System.currentTimeMillis() - startTime;
+        return new SolverResult(status, solution, numPushes, nodes, elapsed, peakMemory);
+    }
+}
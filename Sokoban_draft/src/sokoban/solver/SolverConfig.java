@@ -0,0 +1,146 @@
+package sokoban.solver;
+
+import java.io.File;
+
+import sokoban.engine.TranspositionTable.ReplacementPolicy;
+
+/**
+ * SolverConfig holds the limits a SokobanSolver must respect while searching.
+ * A search that runs out of time or memory gives up and reports so in its
+ * SolverResult rather than running on forever.
+ */
+public class SolverConfig {
+
+    /**
+     * Where the search remembers the states it has seen.
+     */
+    public enum VisitedStore {
+
+        // A FIXED SIZE TranspositionTable ON THE HEAP, WHICH FORGETS STATES
+        // WHEN IT FILLS UP
+        TRANSPOSITION_TABLE,
+        // AN OffHeapStateTable, WHICH KEEPS EVERY STATE OUTSIDE THE HEAP
+        // AND MAY SPILL TO DISK
+        OFF_HEAP
+    }
+
+    // DEFAULT LIMITS, GENEROUS ENOUGH FOR ANY OF THE LEVELS WE SHIP
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 60 * 1000;
+    public static final long DEFAULT_MEMORY_BUDGET_BYTES = 512L * 1024 * 1024;
+    public static final int DEFAULT_TRANSPOSITION_TABLE_BITS = 20;
+    public static final int DEFAULT_NUM_THREADS = 1;
+    public static final long DEFAULT_OFF_HEAP_BUDGET_BYTES = 1L << 30;
+
+    // HOW LONG THE SEARCH MAY RUN
+    private long timeBudgetMillis;
+
+    // HOW MUCH HEAP THE SEARCH MAY USE
+    private long memoryBudgetBytes;
+
+    // THE TRANSPOSITION TABLE HOLDS 2^transpositionTableBits POSITIONS,
+    // AT 16 BYTES EACH, AND MAKES ROOM FOR NEW ONES USING THIS POLICY
+    private int transpositionTableBits;
+    private ReplacementPolicy replacementPolicy;
+
+    // HOW MANY THREADS SEARCH AT ONCE. MORE THAN ONE SPLITS THE SEARCH
+    // ACROSS A FORK-JOIN POOL SHARING A SINGLE TRANSPOSITION TABLE
+    private int numThreads;
+
+    // WHERE A SINGLE THREADED SEARCH REMEMBERS STATES. THE OFF-HEAP STORE
+    // MAY USE offHeapBudgetBytes OF MEMORY, AFTER WHICH IT MOVES TO A FILE
+    // IN spillDirectory, OR RUNS OUT OF ROOM IF THAT'S null
+    private VisitedStore visitedStore;
+    private long offHeapBudgetBytes;
+    private File spillDirectory;
+
+    /**
+     * Constructs a configuration using the default budgets.
+     */
+    public SolverConfig() {
+        this(DEFAULT_TIME_BUDGET_MILLIS, DEFAULT_MEMORY_BUDGET_BYTES);
+    }
+
+    /**
+     * Constructs a configuration with the given budgets.
+     *
+     * @param initTimeBudgetMillis How long a search may run, in milliseconds.
+     *
+     * @param initMemoryBudgetBytes How much of the heap may be in use before
+     * a search gives up, in bytes.
+     */
+    public SolverConfig(long initTimeBudgetMillis, long initMemoryBudgetBytes) {
+        timeBudgetMillis = initTimeBudgetMillis;
+        memoryBudgetBytes = initMemoryBudgetBytes;
+        transpositionTableBits = DEFAULT_TRANSPOSITION_TABLE_BITS;
+        replacementPolicy = ReplacementPolicy.KEEP_SMALLEST_VALUE;
+        numThreads = DEFAULT_NUM_THREADS;
+        visitedStore = VisitedStore.TRANSPOSITION_TABLE;
+        offHeapBudgetBytes = DEFAULT_OFF_HEAP_BUDGET_BYTES;
+    }
+
+    // ACCESSOR METHODS
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    public int getTranspositionTableBits() {
+        return transpositionTableBits;
+    }
+
+    public ReplacementPolicy getReplacementPolicy() {
+        return replacementPolicy;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public VisitedStore getVisitedStore() {
+        return visitedStore;
+    }
+
+    public long getOffHeapBudgetBytes() {
+        return offHeapBudgetBytes;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    // MUTATOR METHODS
+    public void setTimeBudgetMillis(long initTimeBudgetMillis) {
+        timeBudgetMillis = initTimeBudgetMillis;
+    }
+
+    public void setMemoryBudgetBytes(long initMemoryBudgetBytes) {
+        memoryBudgetBytes = initMemoryBudgetBytes;
+    }
+
+    public void setTranspositionTableBits(int initTranspositionTableBits) {
+        transpositionTableBits = initTranspositionTableBits;
+    }
+
+    public void setReplacementPolicy(ReplacementPolicy initReplacementPolicy) {
+        replacementPolicy = initReplacementPolicy;
+    }
+
+    public void setNumThreads(int initNumThreads) {
+        numThreads = initNumThreads;
+    }
+
+    public void setVisitedStore(VisitedStore initVisitedStore) {
+        visitedStore = initVisitedStore;
+    }
+
+    public void setOffHeapBudgetBytes(long initOffHeapBudgetBytes) {
+        offHeapBudgetBytes = initOffHeapBudgetBytes;
+    }
+
+    public void setSpillDirectory(File initSpillDirectory) {
+        spillDirectory = initSpillDirectory;
+    }
+}
@@ -0,0 +1,112 @@
+package sokoban.solver;
+
+/**
+ * SolverResult describes how a SokobanSolver search ended, along with the
+ * solution it found, if any, and some statistics about the search itself.
+ */
+public class SolverResult {
+
+    /**
+     * The ways in which a search may end.
+     */
+    public enum Status {
+
+        SOLVED, UNSOLVABLE, TIMED_OUT, OUT_OF_MEMORY
+    }
+
+    private final Status status;
+
+    // THE MOVES OF THE SOLUTION USING THE USUAL SOKOBAN NOTATION, l r u d
+    // FOR STEPS AND L R U D FOR PUSHES, OR null IF NOT SOLVED
+    private final String solution;
+    private final int numPushes;
+
+    // SEARCH STATISTICS
+    private final long nodesSearched;
+    private final long elapsedMillis;
+    private final long peakMemoryBytes;
+    private final int numThreads;
+
+    public SolverResult(Status initStatus, String initSolution, int initNumPushes,
+            long initNodesSearched, long initElapsedMillis, long initPeakMemoryBytes) {
+        this(initStatus, initSolution, initNumPushes, initNodesSearched, initElapsedMillis,
+                initPeakMemoryBytes, 1);
+    }
+
+    public SolverResult(Status initStatus, String initSolution, int initNumPushes,
+            long initNodesSearched, long initElapsedMillis, long initPeakMemoryBytes,
+            int initNumThreads) {
+        status = initStatus;
+        solution = initSolution;
+        numPushes = initNumPushes;
+        nodesSearched = initNodesSearched;
+        elapsedMillis = initElapsedMillis;
+        peakMemoryBytes = initPeakMemoryBytes;
+        numThreads = initNumThreads;
+    }
+
+    // ACCESSOR METHODS
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSolved() {
+        return status == Status.SOLVED;
+    }
+
+    public String getSolution() {
+        return solution;
+    }
+
+    public int getNumPushes() {
+        return numPushes;
+    }
+
+    public long getNodesSearched() {
+        return nodesSearched;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getPeakMemoryBytes() {
+        return peakMemoryBytes;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Calculates how quickly the search went.
+     *
+     * @return The number of search nodes expanded per second.
+     */
+    public long getNodesPerSecond() {
+        return nodesSearched * 1000 / Math.max(1, elapsedMillis);
+    }
+
+    /**
+     * Calculates how quickly each thread searched, on average, which shows
+     * how well a parallel search scaled.
+     *
+     * @return The number of search nodes expanded per second per thread.
+     */
+    public long getNodesPerSecondPerThread() {
+        return getNodesPerSecond() / numThreads;
+    }
+
+    /**
+     * Builds and returns a one line summary of this result.
+     *
+     * @return The status, pushes, nodes, speed and memory of the search.
+     */
+    @Override
+    public String toString() {
+        return status + " pushes=" + numPushes + " nodes=" + nodesSearched
+                + " time=" + elapsedMillis + "ms nodes/sec=" + getNodesPerSecond()
+                + " threads=" + numThreads + " nodes/sec/thread=" + getNodesPerSecondPerThread()
+                + " peakMemory=" + peakMemoryBytes;
+    }
+}
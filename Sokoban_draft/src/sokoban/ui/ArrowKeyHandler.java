@@ -34,6 +34,10 @@ public class ArrowKeyHandler{
 				ui.moveCharacterDown();
 			} else if (keyCode == KeyCode.U) {
 				ui.undo();
+			} else if (keyCode == KeyCode.R) {
+				ui.redo();
+			} else if (keyCode == KeyCode.F) {
+				ui.toggleFastPlay();
 			}
 		}
 	}
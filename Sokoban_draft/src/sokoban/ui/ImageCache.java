@@ -0,0 +1,154 @@
+package sokoban.ui;
+
+import java.util.HashMap;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+
+/**
+ * ImageCache makes sure each image the game uses is only read from disk and
+ * decoded once. Note that this class is a singleton, so the game screen, the
+ * dialogs and the sprites all share the same images:
+ *
+ * ImageCache images = ImageCache.getImageCache();
+ *
+ * The board tiles are also kept pre-scaled to the current cell size and
+ * packed side by side into a single atlas image, so drawing a cell is just a
+ * copy out of the atlas, with no scaling or decoding while playing.
+ */
+public class ImageCache {
+
+	// THIS CLASS IS A SINGLETON, AND HERE IS THE ONLY OBJECT
+	private static ImageCache singleton = null;
+
+	// WHERE ALL THE IMAGES LIVE
+	private static final String IMG_PATH = "file:images/";
+
+	/**
+	 * The images used to draw cells of the board, in the order they're
+	 * packed into the atlas.
+	 */
+	public enum Tile {
+		WALL("wall.png"),
+		BOX("box.png"),
+		GOAL("place.png"),
+		PLAYER("Sokoban.png");
+
+		private final String fileName;
+
+		Tile(String initFileName) {
+			fileName = initFileName;
+		}
+
+		public String getFileName() {
+			return fileName;
+		}
+	}
+
+	private static final Tile[] TILES = Tile.values();
+
+	// EVERY IMAGE LOADED SO FAR, BY FILE NAME, AT ITS ORIGINAL SIZE
+	private HashMap<String, Image> images = new HashMap<String, Image>();
+
+	// THE TILES AT THE CURRENT CELL SIZE, BOTH ON THEIR OWN AND PACKED
+	// LEFT TO RIGHT INTO ONE ATLAS
+	private Image[] tiles = new Image[TILES.length];
+	private WritableImage atlas;
+	private int tileWidth;
+	private int tileHeight;
+
+	private ImageCache() {
+	}
+
+	/**
+	 * Accessor method for the singleton, constructing it the first time.
+	 *
+	 * @return The one ImageCache.
+	 */
+	public static ImageCache getImageCache() {
+		if (singleton == null) {
+			singleton = new ImageCache();
+		}
+		return singleton;
+	}
+
+	/**
+	 * Gets an image from the images directory, loading it only if this is
+	 * the first time it's been asked for.
+	 *
+	 * @param imageName The file name of the image, like box.png.
+	 *
+	 * @return The image at its original size.
+	 */
+	public Image getImage(String imageName) {
+		Image img = images.get(imageName);
+		if (img == null) {
+			img = new Image(IMG_PATH + imageName);
+			images.put(imageName, img);
+		}
+		return img;
+	}
+
+	/**
+	 * Scales the tiles to the cell size and packs them into the atlas. This
+	 * does nothing if the tiles are already that size, so it's cheap to call
+	 * every time a level is loaded.
+	 *
+	 * @param cellWidth The width of a cell on the screen.
+	 *
+	 * @param cellHeight The height of a cell on the screen.
+	 */
+	public void setTileSize(double cellWidth, double cellHeight) {
+		int width = Math.max(1, (int) Math.round(cellWidth));
+		int height = Math.max(1, (int) Math.round(cellHeight));
+		if (atlas != null && width == tileWidth && height == tileHeight) {
+			return;
+		}
+		tileWidth = width;
+		tileHeight = height;
+		atlas = new WritableImage(tileWidth * TILES.length, tileHeight);
+		PixelWriter writer = atlas.getPixelWriter();
+		for (Tile tile : TILES) {
+			Image scaled = new Image(IMG_PATH + tile.getFileName(), tileWidth, tileHeight, false, true);
+			tiles[tile.ordinal()] = scaled;
+			PixelReader reader = scaled.getPixelReader();
+			if (reader != null) {
+				writer.setPixels(tile.ordinal() * tileWidth, 0, tileWidth, tileHeight, reader, 0, 0);
+			}
+		}
+	}
+
+	/**
+	 * Accessor method for a single tile at the current cell size, for use
+	 * by sprites.
+	 *
+	 * @param tile The tile wanted.
+	 *
+	 * @return The scaled tile image.
+	 */
+	public Image getTile(Tile tile) {
+		return tiles[tile.ordinal()];
+	}
+
+	/**
+	 * Draws a tile by copying it out of the atlas.
+	 *
+	 * @param gc Where to draw it.
+	 *
+	 * @param tile The tile to draw.
+	 *
+	 * @param x The left edge of the cell.
+	 *
+	 * @param y The top edge of the cell.
+	 *
+	 * @param w The width of the cell.
+	 *
+	 * @param h The height of the cell.
+	 */
+	public void drawTile(GraphicsContext gc, Tile tile, double x, double y, double w, double h) {
+		gc.drawImage(atlas, tile.ordinal() * tileWidth, 0, tileWidth, tileHeight, x, y, w, h);
+	}
+}
@@ -7,7 +7,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
-import java.util.Stack;
+import java.util.Arrays;
 
 import javax.swing.JEditorPane;
 
@@ -30,9 +30,19 @@ import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
 import javafx.stage.Modality;
 import javafx.util.Duration;
+import sokoban.engine.DeadlockDetector;
+import sokoban.engine.Direction;
+import sokoban.engine.GameState;
+import sokoban.engine.Level;
+import sokoban.engine.MoveJournal;
+import sokoban.engine.MoveResult;
+import sokoban.engine.TranspositionTable;
+import sokoban.engine.TranspositionTable.ReplacementPolicy;
 import sokoban.file.SokobanFileLoader;
+import sokoban.ui.ImageCache.Tile;
 import sokoban.game.SokobanGameData;
 import sokoban.game.SokobanGameStateManager;
+import sokoban.game.StatsAggregator;
 import properties_manager.PropertiesManager;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
@@ -89,6 +99,8 @@ public class SokobanUI extends Pane {
 	// GamePane
 	private Label SokobanLabel;
 	private BorderPane gamePanel = new BorderPane();
+	// TELLS THE PLAYER WHEN THEIR PUSHES HAVE GONE IN A CIRCLE
+	private Label statusLabel = new Label();
 	private BorderPane statsPanel = new BorderPane();
 
 	//StatsPane
@@ -106,9 +118,6 @@ public class SokobanUI extends Pane {
 	// Padding
 	private Insets marginlessInsets;
 
-	// Image path
-	private String ImgPath = "file:images/";
-
 	// mainPane weight && height
 	private int paneWidth;
 	private int paneHeigth;
@@ -124,20 +133,51 @@ public class SokobanUI extends Pane {
 	private int numRows;
 	public double cellWidth;
 	public double cellHeight;
-	private int[][] levelData;
-	private int[] charPosition = new int[2];
-	private ArrayList<int[]> boxPositions = new ArrayList<int[]>();
-	private ArrayList<int[]> destinations = new ArrayList<int[]>();
+	private GameState gameState;
+	private DeadlockDetector deadlockDetector;
+	// SET BY THE GAME STATE WHEN THE LAST BOX LANDS ON A GOAL
+	private boolean levelSolved;
+	// SET WHEN A PUSH LEAVES THE LEVEL UNSOLVABLE
+	private boolean levelLost;
 	//Game Renderer
 	GameRenderer gameRenderer;
 	private GraphicsContext gc;
-	private Stack<int[]> charMoves;
-	private Stack<int[][]> boxPositionsStack;
+	private MoveJournal journal;
+	// POSITIONS REACHED BY A PUSH THIS GAME, AND HOW MANY MOVES IN THEY
+	// WERE REACHED
+	private TranspositionTable visitedPositions;
+	// EVERY ENTRY PUT IN visitedPositions, OLDEST FIRST, WITH THE MOVE IT
+	// WAS MADE AT AND THE VALUE IT REPLACED, SO UNDO CAN TAKE IT BACK
+	private long[] visitHashes;
+	private long[] visitReplaced;
+	private int[] visitMoves;
+	private int numVisits;
+	// THE SPRITES THAT SLIDE BETWEEN CELLS, AND THE MOVE THEY'RE SHOWING
+	private ImageView playerSprite;
+	private ImageView boxSprite;
+	private TranslateTransition playerSlide;
+	private TranslateTransition boxSlide;
+	private int slideFromCell;
+	private Direction slideDir;
+	private boolean sliding;
+	// THE STATE BEING SHOWN, WHICH FALLS BEHIND gameState WHILE MOVES
+	// ARE WAITING TO BE ANIMATED
+	private GameState viewState;
+	// MOVES MADE BUT NOT YET ANIMATED, OLDEST FIRST
+	private Direction[] queuedMoves = new Direction[MAX_QUEUED_MOVES];
+	private int firstQueuedMove;
+	private int numQueuedMoves;
+	// IF TRUE MOVES ARE DRAWN WITHOUT BEING ANIMATED
+	private boolean fastPlay;
 	//Handlers
 	ArrowKeyHandler arrowKeyHandler;
 	MouseHandler mouseHandler;
 	private Integer level;
 	private static final Integer STARTTIMESECONDS = 0;
+	private static final int VISITED_POSITIONS_BITS = 12;
+	private static final int VISITS_CAPACITY = 256;
+	private static final int MAX_QUEUED_MOVES = 64;
+	private static final double SLIDE_MILLIS = 500;
 	private Timeline timeline;
 	private IntegerProperty timeSeconds = new SimpleIntegerProperty(STARTTIMESECONDS);
 
@@ -190,6 +230,10 @@ public class SokobanUI extends Pane {
 		return helpPane;
 	}
 
+	public String getStatusText() {
+		return statusLabel.getText();
+	}
+
 	public void initMainPane() {
 		marginlessInsets = new Insets(5, 5, 5, 5);
 		mainPane = new BorderPane();
@@ -255,15 +299,7 @@ public class SokobanUI extends Pane {
 		levelSelectionPane.setAlignment(Pos.CENTER_LEFT);
 		// add key listener
 		levelButtons = new ArrayList<Button>();
-		ArrayList<ArrayList<Integer>> levelStats = fileLoader.getStats();
-		int[] wins = new int[7];
-		for(int i=0;i<7;i++) {
-			ArrayList<Integer> levelStat = levelStats.get(i);
-			for(int j=0;j<levelStat.size();j++) {
-				if(levelStat.get(j) > 0)
-					wins[i]++;
-			}
-		}
+		StatsAggregator levelStats = fileLoader.getStatsAggregator();
 		for (int i = 0; i < levels.size(); i++) {
 
 			// GET THE LIST OF LEVEL OPTIONS
@@ -297,7 +333,7 @@ public class SokobanUI extends Pane {
 			label.setContentDisplay(ContentDisplay.BOTTOM);
 			label.setStyle("-fx-font-size:20;-fx-font-weight:bold");
 			if(i!=0) {
-				if (wins[i-1] == 0) {
+				if (levelStats.getWon(i) == 0) {
 					levelButton.setDisable(true);
 				}
 			}
@@ -481,36 +517,39 @@ public class SokobanUI extends Pane {
 	public void initLevel(String level) {
 		PropertiesManager props = PropertiesManager.getPropertiesManager();
 		try {
-			levelData = fileLoader.loadLevel(level);
-			destinations.clear();
-			boxPositions.clear();
+			int[][] levelData = fileLoader.loadLevel(level);
 			numCols = levelData.length;
 			numRows = levelData[0].length;
 			for (int i = 0; i < levelData.length; i++) {
 				for (int j = 0; j < levelData[i].length; j++) {
-					switch (levelData[i][j]) {
-						case 3:
-							int[] destination = new int[2];
-							destination[0] = i;
-							destination[1] = j;
-							destinations.add(destination);
-							break;
-						case 4:
-							charPosition[0] = i;
-							charPosition[1] = j;
-							break;
-					}
 					System.out.print(levelData[i][j] + " ");
 				}
 
 				System.out.println();
 			}
-			charMoves = new Stack<int[]>();
-			boxPositionsStack = new Stack<int[][]>();
+			gameState = new GameState(levelData);
+			deadlockDetector = new DeadlockDetector(gameState.getLevel());
+			levelSolved = false;
+			levelLost = false;
+			gameState.setGoalListener(state -> levelSolved = true);
+			viewState = new GameState(gameState);
+			firstQueuedMove = 0;
+			numQueuedMoves = 0;
+			sliding = false;
+			journal = new MoveJournal();
+			visitedPositions = new TranspositionTable(VISITED_POSITIONS_BITS, ReplacementPolicy.ALWAYS_REPLACE);
+			visitHashes = new long[VISITS_CAPACITY];
+			visitReplaced = new long[VISITS_CAPACITY];
+			visitMoves = new int[VISITS_CAPACITY];
+			numVisits = 0;
+			visitPosition(gameState.getRegionHash(), 0);
 			gameStack = new StackPane();
 			gameRenderer = new GameRenderer();
 			gameStack.getChildren().add(gameRenderer);
+			initSprites();
 			gamePanel.setCenter(gameStack);
+			statusLabel.setText("");
+			gamePanel.setBottom(statusLabel);
 			arrowKeyHandler.enabled = true;
 			mouseHandler.enabled = true;
 		} catch (FileNotFoundException e) {
@@ -538,7 +577,8 @@ public class SokobanUI extends Pane {
 
 		statsPanel.setCenter(statsPane);
 
-		// LOAD THE HELP PAGE
+		// BRING THE STATS PAGE UP TO DATE, THEN LOAD IT
+		fileLoader.writeStatsPage();
 		loadPage(engine,"statsHTML.html");
 		// LET OUR HELP PAGE GO HOME VIA THE HOME BUTTON
 	}
@@ -564,412 +604,268 @@ public class SokobanUI extends Pane {
 	}
 
 	public void moveCharacterLeft() {
-		int[][] temp = new int[numCols][numRows];
-		for (int i = 0; i < numCols; i++) {
-			for (int j = 0; j < numRows; j++) {
-				temp[i][j] = levelData[i][j];
-			}
-		}
-		int[] temp2 = {charPosition[0], charPosition[1]};
-		charMoves.push(temp2);
-		boxPositionsStack.push(temp);
-		if (levelData[charPosition[0] - 1][charPosition[1]] == 5 || levelData[charPosition[0] - 1][charPosition[1]] == 3) {
-			arrowKeyHandler.enabled = false;
-			mouseHandler.enabled = false;
-			levelData[charPosition[0]][charPosition[1]] = 5;
-			Image image = loadImage("Sokoban.png");
-			ImageView soko = new ImageView(image);
-			System.out.print(soko.getX() + " ");
-			System.out.print(soko.getY());
-			soko.setFitHeight(cellHeight);
-			soko.setFitWidth(cellWidth);
-			gameStack.getChildren().add(soko);
-			TranslateTransition tt = new TranslateTransition(Duration.millis(500), soko);
-			int x = (int)(charPosition[0]*cellWidth - gameStack.getWidth()/2+(cellWidth/2) + xOffset);
-			int y = (int)(charPosition[1]*cellHeight - gameStack.getHeight()/2+ (cellHeight/2) + yOffset);
-			int tox = (int)((charPosition[0]-1)*cellWidth - gameStack.getWidth()/2 + cellWidth/2 + xOffset);
-			System.out.print(x + " " + y + " " + tox);
-			tt.setFromX(x);
-			tt.setFromY(y);
-			tt.setToX(tox);
-			tt.setToY(y);
-			tt.play();
-			tt.setOnFinished(e -> {
-				charPosition[0] -= 1;
-				levelData[charPosition[0]][charPosition[1]] = 4;
-				gameStack.getChildren().remove(soko);
-				gameRenderer.repaint();
-				checkWin();
-				checkLose();
-				arrowKeyHandler.enabled = true;
-				mouseHandler.enabled = true;
-			});
-			move.play();
-		} else if (levelData[charPosition[0] - 1][charPosition[1]] == 1) {
-			bump.play();
-		} else if (levelData[charPosition[0] - 1][charPosition[1]] == 2) {
-			if (levelData[charPosition[0] - 2][charPosition[1]] == 5 || levelData[charPosition[0] - 2][charPosition[1]] == 3) {
-				arrowKeyHandler.enabled = false;
-				mouseHandler.enabled = false;
-				levelData[charPosition[0]][charPosition[1]] = 5;
-				levelData[charPosition[0]-1][charPosition[1]] = 5;
-				Image image = loadImage("Sokoban.png");
-				ImageView soko = new ImageView(image);
-				ImageView box = new ImageView(loadImage("box.png"));
-				System.out.print(soko.getX() + " ");
-				System.out.print(soko.getY());
-				soko.setFitHeight(cellHeight);
-				soko.setFitWidth(cellWidth);
-				box.setFitHeight(cellHeight);
-				box.setFitWidth(cellWidth);
-				gameStack.getChildren().add(soko);
-				gameStack.getChildren().add(box);
-				TranslateTransition tt = new TranslateTransition(Duration.millis(500), soko);
-				TranslateTransition tt2 = new TranslateTransition(Duration.millis(500), box);
-				int x = (int)(charPosition[0]*cellWidth - gameStack.getWidth()/2+(cellWidth/2) + xOffset);
-				int y = (int)(charPosition[1]*cellHeight - gameStack.getHeight()/2+ (cellHeight/2) + yOffset);
-				int tox = (int)((charPosition[0]-1)*cellWidth - gameStack.getWidth()/2 + cellWidth/2 + xOffset);
-				System.out.print(x + " " + y + " " + tox);
-				tt.setFromX(x);
-				tt.setFromY(y);
-				tt.setToX(tox);
-				tt.setToY(y);
-				tt2.setFromX(x - cellWidth);
-				tt2.setFromY(y);
-				tt2.setToX(tox - cellWidth);
-				tt2.setToY(y);
-				tt.play();
-				tt2.play();
-				tt.setOnFinished(e -> {
-					levelData[charPosition[0]-2][charPosition[1]] = 2;
-					charPosition[0] -= 1;
-					levelData[charPosition[0]][charPosition[1]] = 4;
-					gameStack.getChildren().remove(soko);
-					gameStack.getChildren().remove(box);
-					gameRenderer.repaint();
-					checkWin();
-					checkLose();
-					arrowKeyHandler.enabled = true;
-					mouseHandler.enabled = true;
-				});
-				move.play();
-			}
-			else {
-				bump.play();
-			}
-
-		}
-		else {
-			bump.play();
-		}
-		gameRenderer.repaint();
+		moveCharacter(Direction.LEFT);
 	}
 
 	public void moveCharacterRight() {
-		int[][] temp = new int[numCols][numRows];
-		for (int i = 0; i < numCols; i++) {
-			for (int j = 0; j < numRows; j++) {
-				temp[i][j] = levelData[i][j];
-			}
+		moveCharacter(Direction.RIGHT);
+	}
+
+	public void moveCharacterUp() {
+		moveCharacter(Direction.UP);
+	}
+
+	public void moveCharacterDown() {
+		moveCharacter(Direction.DOWN);
+	}
+
+	/**
+	 * Remembers the position a push just led to, telling the player when
+	 * an earlier push had already led there, since then the pushes in
+	 * between went around in a circle. Positions are told apart the way the
+	 * solver does it, by the boxes and the region the player can walk
+	 * around in, so walking alone never changes the position.
+	 */
+	private void rememberPosition() {
+		long hash = gameState.getRegionHash();
+		long seenAt = visitedPositions.get(hash);
+		if (seenAt != TranspositionTable.NOT_FOUND && seenAt < journal.getNumMoves()) {
+			statusLabel.setText("The boxes are back where they were after move " + seenAt);
+		} else {
+			statusLabel.setText("");
 		}
-		int[] temp2 = {charPosition[0], charPosition[1]};
-		charMoves.push(temp2);
-		boxPositionsStack.push(temp);
-		if (levelData[charPosition[0] + 1][charPosition[1]] == 5 || levelData[charPosition[0] + 1][charPosition[1]] == 3) {
-			levelData[charPosition[0]][charPosition[1]] = 5;
-			arrowKeyHandler.enabled = false;
-			mouseHandler.enabled = false;
-			levelData[charPosition[0]][charPosition[1]] = 5;
-			Image image = loadImage("Sokoban.png");
-			ImageView soko = new ImageView(image);
-			System.out.print(soko.getX() + " ");
-			System.out.print(soko.getY());
-			soko.setFitHeight(cellHeight);
-			soko.setFitWidth(cellWidth);
-			gameStack.getChildren().add(soko);
-			TranslateTransition tt = new TranslateTransition(Duration.millis(500), soko);
-			int x = (int)(charPosition[0]*cellWidth - gameStack.getWidth()/2+(cellWidth/2) + xOffset);
-			int y = (int)(charPosition[1]*cellHeight - gameStack.getHeight()/2+ (cellHeight/2) + yOffset);
-			int tox = (int)((charPosition[0]+1)*cellWidth - gameStack.getWidth()/2 + cellWidth/2 + xOffset);
-			System.out.print(x + " " + y + " " + tox);
-			tt.setFromX(x);
-			tt.setFromY(y);
-			tt.setToX(tox);
-			tt.setToY(y);
-			tt.play();
-			tt.setOnFinished(e -> {
-				charPosition[0] += 1;
-				levelData[charPosition[0]][charPosition[1]] = 4;
-				gameStack.getChildren().remove(soko);
-				gameRenderer.repaint();
-				checkWin();
-				checkLose();
-				arrowKeyHandler.enabled = true;
-				mouseHandler.enabled = true;
-			});
-			move.play();
-		} else if (levelData[charPosition[0] + 1][charPosition[1]] == 1) {
-			bump.play();
-		} else if (levelData[charPosition[0] + 1][charPosition[1]] == 2) {
-			if (levelData[charPosition[0] + 2][charPosition[1]] == 5 || levelData[charPosition[0] + 2][charPosition[1]] == 3) {
-				arrowKeyHandler.enabled = false;
-				mouseHandler.enabled = false;
-				levelData[charPosition[0]][charPosition[1]] = 5;
-				levelData[charPosition[0]+1][charPosition[1]] = 5;
-				Image image = loadImage("Sokoban.png");
-				ImageView soko = new ImageView(image);
-				ImageView box = new ImageView(loadImage("box.png"));
-				System.out.print(soko.getX() + " ");
-				System.out.print(soko.getY());
-				soko.setFitHeight(cellHeight);
-				soko.setFitWidth(cellWidth);
-				box.setFitHeight(cellHeight);
-				box.setFitWidth(cellWidth);
-				gameStack.getChildren().add(soko);
-				gameStack.getChildren().add(box);
-				TranslateTransition tt = new TranslateTransition(Duration.millis(500), soko);
-				TranslateTransition tt2 = new TranslateTransition(Duration.millis(500), box);
-				int x = (int)(charPosition[0]*cellWidth - gameStack.getWidth()/2+(cellWidth/2) + xOffset);
-				int y = (int)(charPosition[1]*cellHeight - gameStack.getHeight()/2+ (cellHeight/2) + yOffset);
-				int tox = (int)((charPosition[0]+1)*cellWidth - gameStack.getWidth()/2 + cellWidth/2 + xOffset);
-				System.out.print(x + " " + y + " " + tox);
-				tt.setFromX(x);
-				tt.setFromY(y);
-				tt.setToX(tox);
-				tt.setToY(y);
-				tt2.setFromX(x + cellWidth);
-				tt2.setFromY(y);
-				tt2.setToX(tox + cellWidth);
-				tt2.setToY(y);
-				tt.play();
-				tt2.play();
-				tt.setOnFinished(e -> {
-					levelData[charPosition[0]+2][charPosition[1]] = 2;
-					charPosition[0] += 1;
-					levelData[charPosition[0]][charPosition[1]] = 4;
-					gameStack.getChildren().remove(soko);
-					gameStack.getChildren().remove(box);
-					gameRenderer.repaint();
-					checkWin();
-					checkLose();
-					arrowKeyHandler.enabled = true;
-					mouseHandler.enabled = true;
-				});
-				move.play();
-			}
+		visitPosition(hash, journal.getNumMoves());
+	}
 
-			else {
-				bump.play();
-			}
+	/**
+	 * Records that a position was reached after some move, keeping what
+	 * that replaced so it can be put back if the move is undone.
+	 */
+	private void visitPosition(long hash, int moveNumber) {
+		if (numVisits == visitHashes.length) {
+			visitHashes = Arrays.copyOf(visitHashes, numVisits * 2);
+			visitReplaced = Arrays.copyOf(visitReplaced, numVisits * 2);
+			visitMoves = Arrays.copyOf(visitMoves, numVisits * 2);
+		}
+		visitHashes[numVisits] = hash;
+		visitReplaced[numVisits] = visitedPositions.get(hash);
+		visitMoves[numVisits] = moveNumber;
+		numVisits++;
+		visitedPositions.put(hash, moveNumber);
+	}
 
+	/**
+	 * Forgets the positions reached after moves that have been undone,
+	 * newest first, so each entry goes back to what it was before.
+	 *
+	 * @param numMoves How many moves are still applied.
+	 */
+	private void forgetVisitsAfter(int numMoves) {
+		while (numVisits > 0 && visitMoves[numVisits - 1] > numMoves) {
+			numVisits--;
+			visitedPositions.put(visitHashes[numVisits], visitReplaced[numVisits]);
 		}
+	}
 
-		else {
+	/**
+	 * Asks the game state to move the player in the dir direction. The move
+	 * happens right away, and its animation is queued up behind any that
+	 * are still playing, so keys pressed mid-animation aren't lost.
+	 *
+	 * @param dir The direction to move the player in.
+	 */
+	private void moveCharacter(Direction dir) {
+		if (numQueuedMoves == queuedMoves.length) {
 			bump.play();
+			return;
 		}
-		gameRenderer.repaint();
-	}
+		int fromCell = gameState.getPlayer();
+		MoveResult result = gameState.tryMove(dir);
+		if (result == MoveResult.BLOCKED) {
+			bump.play();
+			return;
+		}
+		journal.record(fromCell, dir, result);
+		if (result == MoveResult.PUSHED) {
+			rememberPosition();
+		}
+		move.play();
 
-	public void moveCharacterUp() {
-		int[][] temp = new int[numCols][numRows];
-		for (int i = 0; i < numCols; i++) {
-			for (int j = 0; j < numRows; j++) {
-				temp[i][j] = levelData[i][j];
-			}
+		// ONCE THE GAME IS DECIDED NO MORE MOVES ARE TAKEN, AND WE SAY SO
+		// WHEN THE ANIMATIONS CATCH UP
+		if (result == MoveResult.PUSHED
+				&& deadlockDetector.isDeadlocked(gameState.getBoxes(), gameState.getLevel().neighbor(gameState.getPlayer(), dir))) {
+			levelLost = true;
 		}
-		int[] temp2 = {charPosition[0], charPosition[1]};
-		charMoves.push(temp2);
-		boxPositionsStack.push(temp);
-		if (levelData[charPosition[0]][charPosition[1] - 1] == 5 || levelData[charPosition[0]][charPosition[1] - 1] == 3) {
+		if (levelSolved || levelLost) {
 			arrowKeyHandler.enabled = false;
 			mouseHandler.enabled = false;
-			levelData[charPosition[0]][charPosition[1]] = 5;
-			Image image = loadImage("Sokoban.png");
-			ImageView soko = new ImageView(image);
-			System.out.print(soko.getX() + " ");
-			System.out.print(soko.getY());
-			soko.setFitHeight(cellHeight);
-			soko.setFitWidth(cellWidth);
-			gameStack.getChildren().addAll(soko);
-			TranslateTransition tt = new TranslateTransition(Duration.millis(500), soko);
-			int x = (int)(charPosition[0]*cellWidth - gameStack.getWidth()/2+(cellWidth/2) + xOffset);
-			int y = (int)(charPosition[1]*cellHeight - gameStack.getHeight()/2+ (cellHeight/2) + yOffset);
-			int toy = (int)((charPosition[1]-1)*cellHeight- gameStack.getHeight()/2 + cellHeight/2 + yOffset);
-			System.out.print(x + " " + y + " " + toy);
-			tt.setFromX(x);
-			tt.setFromY(y);
-			tt.setToX(x);
-			tt.setToY(toy);
-			tt.play();
-			tt.setOnFinished(e -> {
-				charPosition[1] -= 1;
-				levelData[charPosition[0]][charPosition[1]] = 4;
-				gameStack.getChildren().remove(soko);
-				gameRenderer.repaint();
-				checkWin();
-				checkLose();
-				arrowKeyHandler.enabled = true;
-				mouseHandler.enabled = true;
-			});
-			move.play();
-		} else if (levelData[charPosition[0]][charPosition[1] - 1] == 1) {
-			bump.play();
-		} else if (levelData[charPosition[0]][charPosition[1] - 1] == 2) {
-			if (levelData[charPosition[0]][charPosition[1] - 2] == 5 || levelData[charPosition[0]][charPosition[1] - 2] == 3) {
-				arrowKeyHandler.enabled = false;
-				mouseHandler.enabled = false;
-				levelData[charPosition[0]][charPosition[1]] = 5;
-				levelData[charPosition[0]][charPosition[1]-1] = 5;
-				Image image = loadImage("Sokoban.png");
-				ImageView imageView = new ImageView(image);
-				ImageView box = new ImageView(loadImage("box.png"));
-				box.setFitWidth(cellWidth);
-				box.setFitHeight(cellHeight);
-				System.out.print(imageView.getX() + " ");
-				System.out.print(imageView.getY());
-				imageView.setFitHeight(cellHeight);
-				imageView.setFitWidth(cellWidth);
-				gameStack.getChildren().addAll(imageView, box);
-				TranslateTransition tt = new TranslateTransition(Duration.millis(500), imageView);
-				TranslateTransition tt2 = new TranslateTransition(Duration.millis(500), box);
-				int x = (int)(charPosition[0]*cellWidth - gameStack.getWidth()/2+(cellWidth/2) + xOffset);
-				int y = (int)(charPosition[1]*cellHeight - gameStack.getHeight()/2+ (cellHeight/2) + yOffset);
-				int toy = (int)((charPosition[1]-1)*cellHeight- gameStack.getHeight()/2 + cellHeight/2 + yOffset);
-				System.out.print(x + " " + y + " " + toy);
-				tt.setFromX(x);
-				tt.setFromY(y);
-				tt.setToX(x);
-				tt.setToY(toy);
-				tt2.setFromX(x);
-				tt2.setFromY(y - cellHeight);
-				tt2.setToX(x);
-				tt2.setToY(toy - cellHeight);
-				tt.play();
-				tt2.play();
-				tt.setOnFinished(e -> {
-					levelData[charPosition[0]][charPosition[1] - 2] = 2;
-					charPosition[1] -= 1;
-					levelData[charPosition[0]][charPosition[1]] = 4;
-					gameStack.getChildren().remove(imageView);
-					gameStack.getChildren().remove(box);
-					gameRenderer.repaint();
-					checkWin();
-					checkLose();
-					arrowKeyHandler.enabled = true;
-					mouseHandler.enabled = true;
-				});
-
-				move.play();
+		}
+		queuedMoves[(firstQueuedMove + numQueuedMoves) % queuedMoves.length] = dir;
+		numQueuedMoves++;
+		if (!sliding) {
+			playQueuedMoves();
+		}
+	}
+
+	/**
+	 * Catches the view up with the game state by playing the queued moves.
+	 * Each move is animated, faster the more moves are waiting, unless fast
+	 * play is on, in which case they're all just drawn. Once they're done
+	 * we check whether the game was won or lost.
+	 */
+	private void playQueuedMoves() {
+		while (numQueuedMoves > 0) {
+			Direction dir = queuedMoves[firstQueuedMove];
+			firstQueuedMove = (firstQueuedMove + 1) % queuedMoves.length;
+			numQueuedMoves--;
+			int fromCell = viewState.getPlayer();
+			int fromCol = viewState.getPlayerCol();
+			int fromRow = viewState.getPlayerRow();
+			MoveResult result = viewState.tryMove(dir);
+			if (fastPlay) {
+				gameRenderer.repaintMove(fromCell, dir);
+				continue;
 			}
-			else {
-				bump.play();
+
+			// HIDE THE PIECES THAT ARE ABOUT TO SLIDE IN UNTIL THE
+			// ANIMATION IS DONE
+			Duration duration = Duration.millis(SLIDE_MILLIS / (1 + numQueuedMoves));
+			int toCol = viewState.getPlayerCol();
+			int toRow = viewState.getPlayerRow();
+			slideFromCell = fromCell;
+			slideDir = dir;
+			startSlide(playerSlide, playerSprite, duration, fromCol, fromRow, toCol, toRow);
+			gameRenderer.hidePlayer(toCol, toRow);
+			if (result == MoveResult.PUSHED) {
+				int boxCol = toCol + dir.getColDelta();
+				int boxRow = toRow + dir.getRowDelta();
+				startSlide(boxSlide, boxSprite, duration, toCol, toRow, boxCol, boxRow);
+				gameRenderer.hideBox(boxCol, boxRow);
 			}
+			gameRenderer.repaintMove(fromCell, dir);
+			sliding = true;
+			return;
 		}
+		sliding = false;
+		reportOutcome();
+	}
 
-		else {
-			bump.play();
+	/**
+	 * Ends the game if the moves that were queued won or lost it. Input was
+	 * turned off when the deciding move was made, so this has to happen once
+	 * that move has been shown, however it gets shown.
+	 *
+	 * @return true if the game is over.
+	 */
+	private boolean reportOutcome() {
+		if (levelSolved && gameState.isSolved()) {
+			checkWin();
+			return true;
+		}
+		if (levelLost) {
+			lose();
+			return true;
 		}
-		gameRenderer.repaint();
+		return false;
 	}
 
-	public void moveCharacterDown() {
-		int[][] temp = new int[numCols][numRows];
-		for (int i = 0; i < numCols; i++) {
-			for (int j = 0; j < numRows; j++) {
-				temp[i][j] = levelData[i][j];
-			}
+	/**
+	 * Ends any animation right away and draws the rest of the queued moves
+	 * without animating them, so the view matches the game state. If those
+	 * moves decided the game, the win or loss is reported just as it would
+	 * have been when they finished playing.
+	 *
+	 * @return true if the skipped moves ended the game.
+	 */
+	private boolean skipQueuedMoves() {
+		if (!sliding && numQueuedMoves == 0) {
+			return false;
 		}
-		int[] temp2 = {charPosition[0], charPosition[1]};
-		charMoves.push(temp2);
-		boxPositionsStack.push(temp);
-		if (levelData[charPosition[0]][charPosition[1] + 1] == 5 || levelData[charPosition[0]][charPosition[1] + 1] == 3) {
-			arrowKeyHandler.enabled = false;
-			mouseHandler.enabled = false;
-			levelData[charPosition[0]][charPosition[1]] = 5;
-			Image image = loadImage("Sokoban.png");
-			ImageView soko = new ImageView(image);
-			System.out.print(soko.getX() + " ");
-			System.out.print(soko.getY());
-			soko.setFitHeight(cellHeight);
-			soko.setFitWidth(cellWidth);
-			gameStack.getChildren().addAll(soko);
-			TranslateTransition tt = new TranslateTransition(Duration.millis(500), soko);
-			int x = (int)(charPosition[0]*cellWidth - gameStack.getWidth()/2+(cellWidth/2) + xOffset);
-			int y = (int)(charPosition[1]*cellHeight - gameStack.getHeight()/2+ (cellHeight/2) + yOffset);
-			int toy = (int)((charPosition[1]+1)*cellHeight- gameStack.getHeight()/2 + cellHeight/2 + yOffset);
-			System.out.print(x + " " + y + " " + toy);
-			tt.setFromX(x);
-			tt.setFromY(y);
-			tt.setToX(x);
-			tt.setToY(toy);
-			tt.play();
-			tt.setOnFinished(e -> {
-				charPosition[1] += 1;
-				levelData[charPosition[0]][charPosition[1]] = 4;
-				gameStack.getChildren().remove(soko);
-				gameRenderer.repaint();
-				checkWin();
-				checkLose();
-				arrowKeyHandler.enabled = true;
-				mouseHandler.enabled = true;
-			});
-			move.play();
-		} else if (levelData[charPosition[0]][charPosition[1] + 1] == 1) {
-			bump.play();
-		} else if (levelData[charPosition[0]][charPosition[1] + 1] == 2) {
-			if (levelData[charPosition[0]][charPosition[1] + 2] == 5 || levelData[charPosition[0]][charPosition[1] + 2] == 3) {
-				arrowKeyHandler.enabled = false;
-				mouseHandler.enabled = false;
-				levelData[charPosition[0]][charPosition[1]] = 5;
-				levelData[charPosition[0]][charPosition[1]+1] = 5;
-				Image image = loadImage("Sokoban.png");
-				ImageView imageView = new ImageView(image);
-				ImageView box = new ImageView(loadImage("box.png"));
-				box.setFitWidth(cellWidth);
-				box.setFitHeight(cellHeight);
-				System.out.print(imageView.getX() + " ");
-				System.out.print(imageView.getY());
-				imageView.setFitHeight(cellHeight);
-				imageView.setFitWidth(cellWidth);
-				gameStack.getChildren().addAll(imageView,box);
-				TranslateTransition tt = new TranslateTransition(Duration.millis(500), imageView);
-				TranslateTransition tt2 = new TranslateTransition(Duration.millis(500), box);
-				int x = (int)(charPosition[0]*cellWidth - gameStack.getWidth()/2+(cellWidth/2) + xOffset);
-				int y = (int)(charPosition[1]*cellHeight - gameStack.getHeight()/2+ (cellHeight/2) + yOffset);
-				int toy = (int)((charPosition[1]+1)*cellHeight- gameStack.getHeight()/2 + cellHeight/2 + yOffset);
-				System.out.print(x + " " + y + " " + toy);
-				tt.setFromX(x);
-				tt.setFromY(y);
-				tt.setToX(x);
-				tt.setToY(toy);
-				tt2.setFromX(x);
-				tt2.setFromY(y+cellHeight);
-				tt2.setToX(x);
-				tt2.setToY(toy+cellHeight);
-				tt.play();
-				tt2.play();
-				tt.setOnFinished(e -> {
-					levelData[charPosition[0]][charPosition[1] + 2] = 2;
-					charPosition[1] += 1;
-					levelData[charPosition[0]][charPosition[1]] = 4;
-					gameStack.getChildren().remove(imageView);
-					gameStack.getChildren().remove(box);
-					gameRenderer.repaint();
-					checkWin();
-					checkLose();
-					arrowKeyHandler.enabled = true;
-					mouseHandler.enabled = true;
-				});
-				move.play();
-			}
-			else {
-				bump.play();
-			}
+		if (sliding) {
+			playerSlide.stop();
+			boxSlide.stop();
+			playerSprite.setVisible(false);
+			boxSprite.setVisible(false);
+			gameRenderer.showAllCells();
+			gameRenderer.repaintMove(slideFromCell, slideDir);
 		}
-		else {
-			bump.play();
+		while (numQueuedMoves > 0) {
+			Direction dir = queuedMoves[firstQueuedMove];
+			firstQueuedMove = (firstQueuedMove + 1) % queuedMoves.length;
+			numQueuedMoves--;
+			int fromCell = viewState.getPlayer();
+			viewState.tryMove(dir);
+			gameRenderer.repaintMove(fromCell, dir);
+		}
+		sliding = false;
+		return reportOutcome();
+	}
+
+	/**
+	 * Turns fast play on or off. In fast play moves are drawn straight away
+	 * with no animation.
+	 */
+	public void toggleFastPlay() {
+		fastPlay = !fastPlay;
+		if (fastPlay) {
+			skipQueuedMoves();
 		}
-		gameRenderer.repaint();
+	}
+
+	/**
+	 * Makes the game stack's sprites and the transitions that slide them,
+	 * once per level. Moves only reposition and replay these, so they never
+	 * add to or remove from the scene graph. Only one box can move at a time,
+	 * so one box sprite is all we need.
+	 */
+	private void initSprites() {
+		ImageCache images = ImageCache.getImageCache();
+		playerSprite = new ImageView(images.getTile(Tile.PLAYER));
+		boxSprite = new ImageView(images.getTile(Tile.BOX));
+		for (ImageView sprite : new ImageView[] { playerSprite, boxSprite }) {
+			sprite.setFitWidth(cellWidth);
+			sprite.setFitHeight(cellHeight);
+			sprite.setVisible(false);
+			gameStack.getChildren().add(sprite);
+		}
+		playerSlide = new TranslateTransition(Duration.millis(SLIDE_MILLIS), playerSprite);
+		boxSlide = new TranslateTransition(Duration.millis(SLIDE_MILLIS), boxSprite);
+		playerSlide.setOnFinished(e -> finishSlide());
+	}
+
+	private void startSlide(TranslateTransition slide, ImageView sprite, Duration duration, int fromCol, int fromRow, int toCol, int toRow) {
+		slide.setDuration(duration);
+		slide.setFromX(spriteX(fromCol));
+		slide.setFromY(spriteY(fromRow));
+		slide.setToX(spriteX(toCol));
+		slide.setToY(spriteY(toRow));
+		sprite.setTranslateX(spriteX(fromCol));
+		sprite.setTranslateY(spriteY(fromRow));
+		sprite.setVisible(true);
+		slide.playFromStart();
+	}
+
+	/**
+	 * Called when the player's slide ends. The box's slide takes just as
+	 * long, so it's done too.
+	 */
+	private void finishSlide() {
+		playerSprite.setVisible(false);
+		boxSprite.setVisible(false);
+		gameRenderer.showAllCells();
+		gameRenderer.repaintMove(slideFromCell, slideDir);
+		playQueuedMoves();
+	}
+
+	// THESE CONVERT A GRID CELL INTO THE TRANSLATION OF A SPRITE
+	// CENTERED IN THE GAME STACK
+	private int spriteX(int col) {
+		return (int) (col * cellWidth - gameStack.getWidth() / 2 + cellWidth / 2 + xOffset);
+	}
+
+	private int spriteY(int row) {
+		return (int) (row * cellHeight - gameStack.getHeight() / 2 + cellHeight / 2 + yOffset);
 	}
 
 	public void mouseClicked(MouseEvent me) {
@@ -977,13 +873,13 @@ public class SokobanUI extends Pane {
 		gridx /= cellWidth;
 		int gridy = (int) (me.getY());
 		gridy /= cellHeight;
-		if (charPosition[0] == (gridx + 1) && charPosition[1] == gridy) {
+		if (gameState.getPlayerCol() == (gridx + 1) && gameState.getPlayerRow() == gridy) {
 			moveCharacterLeft();
-		} else if (charPosition[0] == (gridx - 1) && charPosition[1] == gridy) {
+		} else if (gameState.getPlayerCol() == (gridx - 1) && gameState.getPlayerRow() == gridy) {
 			moveCharacterRight();
-		} else if (charPosition[0] == (gridx) && charPosition[1] == gridy + 1) {
+		} else if (gameState.getPlayerCol() == (gridx) && gameState.getPlayerRow() == gridy + 1) {
 			moveCharacterUp();
-		} else if (charPosition[0] == (gridx) && charPosition[1] == gridy - 1) {
+		} else if (gameState.getPlayerCol() == (gridx) && gameState.getPlayerRow() == gridy - 1) {
 			moveCharacterDown();
 		}
 	}
@@ -1052,7 +948,7 @@ public class SokobanUI extends Pane {
 		Text exitLabel = new Text("YOU WIN!\nHead Back to the Main screen?");
 		exitLabel.setFont(Font.font("Calibri"));
 		exitLabel.setStyle("-fx-text-alignment:center");
-		Image wini = new Image(ImgPath+"trophy.png");
+		Image wini = loadImage("trophy.png");
 		ImageView winv = new ImageView(wini);
 		winv.setFitWidth(200);
 		winv.setFitHeight(300);
@@ -1083,29 +979,25 @@ public class SokobanUI extends Pane {
 		gridx2 /= cellWidth;
 		int gridy2 = (int) (me2.getY());
 		gridy2 /= cellHeight;
-		if (charPosition[0] == gridx1 && charPosition[1] == gridy1) {
-			if (charPosition[0] == (gridx2 + 1) && charPosition[1] == gridy2) {
+		if (gameState.getPlayerCol() == gridx1 && gameState.getPlayerRow() == gridy1) {
+			if (gameState.getPlayerCol() == (gridx2 + 1) && gameState.getPlayerRow() == gridy2) {
 				moveCharacterLeft();
-			} else if (charPosition[0] == (gridx2 - 1) && charPosition[1] == gridy2) {
+			} else if (gameState.getPlayerCol() == (gridx2 - 1) && gameState.getPlayerRow() == gridy2) {
 				moveCharacterRight();
-			} else if (charPosition[0] == (gridx2) && charPosition[1] == gridy2 + 1) {
+			} else if (gameState.getPlayerCol() == (gridx2) && gameState.getPlayerRow() == gridy2 + 1) {
 				moveCharacterUp();
-			} else if (charPosition[0] == (gridx2) && charPosition[1] == gridy2 - 1) {
+			} else if (gameState.getPlayerCol() == (gridx2) && gameState.getPlayerRow() == gridy2 - 1) {
 				moveCharacterDown();
 			}
 		}
 	}
 
+	/**
+	 * Ends the game as a win if the last push solved the level. The game
+	 * state tells us when that happens, so this doesn't look at the board.
+	 */
 	public void checkWin() {
-		boolean won = true;
-		for (int i = 0; i < destinations.size(); i++) {
-			int[] destData = destinations.get(i);
-			int[] blockData = boxPositions.get(i);
-			if (destData[0] != blockData[0] || destData[1] != blockData[1]) {
-				won = false;
-			}
-		}
-		if (won) {
+		if (levelSolved && gameState.isSolved()) {
 			timeline.stop();
 			SokobanGameData data = gsm.getGameInProgress();
 			data.giveUp();
@@ -1115,48 +1007,31 @@ public class SokobanUI extends Pane {
 		}
 	}
 
+	/**
+	 * Checks every box for a deadlock, ending the game if there is one.
+	 */
 	public void checkLose() {
-		boolean lost = false;
-		A: for (int i = 0; i < boxPositions.size(); i++) {
-			int[] blockData = boxPositions.get(i);
-			for(int j=0;j<boxPositions.size();j++) {
-				int[] destData = destinations.get(j);
-				if(destData[0] == blockData[0] && destData[1] == blockData[1])
-					continue A;
-			}
-				if (levelData[blockData[0]-1][blockData[1]] == 1 && levelData[blockData[0]][blockData[1]+1] == 1) {
-					lost = true;
-				}
-				if (levelData[blockData[0]][blockData[1]+1] == 1 && levelData[blockData[0]+1][blockData[1]] == 1) {
-					lost = true;
-				}
-				if (levelData[blockData[0]+1][blockData[1]] == 1 && levelData[blockData[0]][blockData[1]-1] == 1) {
-					lost = true;
-				}
-				if (levelData[blockData[0]][blockData[1]-1] == 1 && levelData[blockData[0]-1][blockData[1]] == 1) {
-					lost = true;
-
-			}
+		if (deadlockDetector.hasDeadlock(gameState.getBoxes())) {
+			lose();
 		}
+	}
 
-		if(lost) {
-			timeline.pause();
-			SokobanGameData data = gsm.getGameInProgress();
-			data.giveUp();
-			int time = (int)data.getTimeOfGame();
-			time*=-1;
-			fileLoader.addToStats(data.getLevel(), time);
-			loseDialog();
-		}
+	private void lose() {
+		timeline.pause();
+		SokobanGameData data = gsm.getGameInProgress();
+		data.giveUp();
+		int time = (int)data.getTimeOfGame();
+		time*=-1;
+		fileLoader.addToStats(data.getLevel(), time);
+		loseDialog();
 	}
 
 	class GameRenderer extends Canvas {
 
 		PropertiesManager props = PropertiesManager.getPropertiesManager();
-		Image wallImage = new Image("file:images/wall.png");
-		Image boxImage = new Image("file:images/box.png");
-		Image placeImage = new Image("file:images/place.png");
-		Image sokobanImage = new Image("file:images/Sokoban.png");
+		ImageCache images = ImageCache.getImageCache();
+		int[] hiddenPlayer = {-1, -1};
+		int[] hiddenBox = {-1, -1};
 
 		public GameRenderer() {
 			this.setWidth(800);
@@ -1165,93 +1040,147 @@ public class SokobanUI extends Pane {
 			cellWidth = this.getWidth() / numCols;
 			cellWidth = (cellHeight < cellWidth) ? cellHeight : cellWidth;
 			cellHeight = (cellHeight < cellWidth) ? cellHeight : cellWidth;
+			images.setTileSize(cellWidth, cellHeight);
 			repaint();
 
 		}
 
+		/**
+		 * Redraws the whole canvas. This is only needed when a level is
+		 * loaded, since moves just redraw the cells they changed.
+		 */
 		public void repaint() {
 			gc = this.getGraphicsContext2D();
-			gc.clearRect(0, 0, this.getWidth(), this.getHeight());
 			xOffset = (int) ((this.getWidth() - (numCols * cellWidth)) / 2);
-
+			yOffset = (int) ((this.getHeight() - (numRows * cellHeight)) / 2);
 			gc.setFill(Color.DARKORANGE);
 			gc.fillRect(0, 0, this.getWidth(), this.getHeight());
-			gc.setFill(Color.WHITE);
-			boxPositions.clear();
 			for (int i = 0; i < numCols; i++) {
-				yOffset = (int) ((this.getHeight() - (numRows * cellHeight)) / 2);
 				for (int j = 0; j < numRows; j++) {
-					if (levelData[i][j] != 0) {
-						gc.setFill(Color.WHITE);
-						gc.fillRect(xOffset, yOffset, cellWidth, cellHeight);
-					}
-					switch (levelData[i][j]) {
-						case 1:
-							gc.drawImage(wallImage, xOffset, yOffset, cellWidth, cellHeight);
-							break;
-						case 2:
-							int[] boxPosition = new int[2];
-							boxPosition[0] = i;
-							boxPosition[1] = j;
-							boxPositions.add(boxPosition);
-							gc.drawImage(boxImage, xOffset, yOffset, cellWidth, cellHeight);
-							break;
-						case 3:
-							gc.drawImage(placeImage, xOffset, yOffset, cellWidth, cellHeight);
-							break;
-						case 4:
-							gc.drawImage(sokobanImage, xOffset, yOffset, cellWidth, cellHeight);
-							break;
-						case 5:
-							gc.setFill(Color.WHITE);
-							gc.fillRect(xOffset, yOffset, cellWidth, cellHeight);
-					}
-					String numToDraw = "" + levelData[i][j];
-					yOffset += cellHeight;
+					drawTile(i, j);
 				}
-				xOffset += cellWidth;
 			}
-			xOffset = (int) ((this.getWidth() - (numCols * cellWidth)) / 2);
-			yOffset = (int) ((this.getHeight() - (numRows * cellHeight)) / 2);
-			for (int i = 0; i < destinations.size(); i++) {
-				int[] data = destinations.get(i);
-				if (levelData[data[0]][data[1]] == 5) {
-					int xcoord = xOffset + (int) (data[0] * cellWidth);
-					int ycoord = yOffset + data[1] * (int) cellHeight;
-					gc.drawImage(placeImage, xcoord, ycoord, cellWidth, cellHeight);
-				} else if (levelData[data[0]][data[1]] == 4) {
-					int xcoord = xOffset + (int) (data[0] * cellWidth);
-					int ycoord = yOffset + data[1] * (int) cellHeight;
-					gc.drawImage(placeImage, xcoord, ycoord, cellWidth, cellHeight);
-					gc.drawImage(sokobanImage, xcoord, ycoord, cellWidth, cellHeight);
-				} else if (levelData[data[0]][data[1]] == 2) {
-					int xcoord = xOffset + (int) (data[0] * cellWidth);
-					int ycoord = yOffset + data[1] * (int) cellHeight;
-					gc.drawImage(placeImage, xcoord, ycoord, cellWidth, cellHeight);
-					gc.drawImage(boxImage, xcoord, ycoord, cellWidth, cellHeight);
-				}
+		}
+
+		/**
+		 * Redraws only the cells a move could have changed, which are the
+		 * cell the player moved from, the one it moved to and the one past
+		 * that, where a pushed box would have ended up.
+		 *
+		 * @param fromCell The cell the player moved from.
+		 *
+		 * @param dir The direction the player moved in.
+		 */
+		public void repaintMove(int fromCell, Direction dir) {
+			Level level = viewState.getLevel();
+			int cell = fromCell;
+			for (int i = 0; i < 3 && cell >= 0; i++) {
+				drawTile(level.colOf(cell), level.rowOf(cell));
+				cell = level.neighbor(cell, dir);
+			}
+		}
+
+		/**
+		 * Draws a single cell over whatever was there before.
+		 */
+		private void drawTile(int col, int row) {
+			double x = xOffset + col * cellWidth;
+			double y = yOffset + row * cellHeight;
+			int cell = cellToDraw(col, row);
+			if (cell == GameState.EMPTY) {
+				gc.setFill(Color.DARKORANGE);
+				gc.fillRect(x, y, cellWidth, cellHeight);
+				return;
+			}
+			gc.setFill(Color.WHITE);
+			gc.fillRect(x, y, cellWidth, cellHeight);
+			if (viewState.isGoal(col, row)) {
+				images.drawTile(gc, Tile.GOAL, x, y, cellWidth, cellHeight);
+			}
+			switch (cell) {
+				case GameState.WALL:
+					images.drawTile(gc, Tile.WALL, x, y, cellWidth, cellHeight);
+					break;
+				case GameState.BOX:
+					images.drawTile(gc, Tile.BOX, x, y, cellWidth, cellHeight);
+					break;
+				case GameState.PLAYER:
+					images.drawTile(gc, Tile.PLAYER, x, y, cellWidth, cellHeight);
+					break;
 			}
 		}
 
 		public void drawCharacter(int x, int y) {
-			gc.drawImage(sokobanImage, x, y, cellWidth, cellHeight);
+			images.drawTile(gc, Tile.PLAYER, x, y, cellWidth, cellHeight);
+		}
+
+		/**
+		 * While the player or a box is being animated into a cell we draw
+		 * that cell as if it were empty, so these keep track of such cells.
+		 */
+		public void hidePlayer(int col, int row) {
+			hiddenPlayer[0] = col;
+			hiddenPlayer[1] = row;
+		}
+
+		public void hideBox(int col, int row) {
+			hiddenBox[0] = col;
+			hiddenBox[1] = row;
+		}
+
+		public void showAllCells() {
+			hiddenPlayer[0] = -1;
+			hiddenBox[0] = -1;
+		}
+
+		private int cellToDraw(int col, int row) {
+			if ((hiddenPlayer[0] == col && hiddenPlayer[1] == row)
+					|| (hiddenBox[0] == col && hiddenBox[1] == row)) {
+				return viewState.isGoal(col, row) ? GameState.GOAL : GameState.FLOOR;
+			}
+			return viewState.getCell(col, row);
 		}
 	}
 
 	public Image loadImage(String imageName) {
-		Image img = new Image(ImgPath + imageName);
-		return img;
+		return ImageCache.getImageCache().getImage(imageName);
 	}
 
 	public void undo() {
-		if (charMoves.isEmpty()) {
+		// A GAME THAT JUST ENDED HAS ITS OWN DIALOG, WHICH OFFERS ANY UNDO
+		if (skipQueuedMoves()) {
+			return;
+		}
+		Direction dir = journal.undo(gameState);
+		if (dir == null) {
 			errorHandler.processError(SokobanPropertyType.ERROR_NO_MORE_UNDOS);
 		} else
 
 		{
-			levelData = boxPositionsStack.pop().clone();
-			charPosition = charMoves.pop().clone();
-			gameRenderer.repaint();
+			levelLost = false;
+			levelSolved = gameState.isSolved();
+			forgetVisitsAfter(journal.getNumMoves());
+			statusLabel.setText("");
+			arrowKeyHandler.enabled = true;
+			mouseHandler.enabled = true;
+			viewState = new GameState(gameState);
+			gameRenderer.repaintMove(gameState.getPlayer(), dir);
+		}
+	}
+
+	public void redo() {
+		if (skipQueuedMoves()) {
+			return;
+		}
+		int fromCell = gameState.getPlayer();
+		Direction dir = journal.redo(gameState);
+		if (dir == null) {
+			bump.play();
+		} else {
+			viewState.tryMove(dir);
+			gameRenderer.repaintMove(fromCell, dir);
+			checkWin();
+			checkLose();
 		}
 	}
 
@@ -0,0 +1,33 @@
+package xml_utilities;
+
+import org.xml.sax.Attributes;
+
+/**
+ * An XMLElementListener is told about each element of an XML document as
+ * XMLUtilities.streamXMLDocument reads it, so the document can be loaded
+ * without ever building a DOM tree.
+ * 
+ * @author  Richard McKenna
+ *          Debugging Enterprises
+ * @version 1.0
+ */
+public interface XMLElementListener
+{
+    /**
+     * Called when an element's start tag has been read.
+     * 
+     * @param elementName The element's name, without any namespace prefix.
+     * 
+     * @param attributes The element's attributes.
+     */
+    public void elementStarted(String elementName, Attributes attributes);
+
+    /**
+     * Called when an element's end tag has been read.
+     * 
+     * @param elementName The element's name, without any namespace prefix.
+     * 
+     * @param text All the text directly inside the element.
+     */
+    public void elementEnded(String elementName, String text);
+}
@@ -3,19 +3,29 @@ package xml_utilities;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.ZipFile;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * This class provides general purpose utilities for the loading and
@@ -34,6 +44,26 @@ public class XMLUtilities
     // THIS REFERENCES A STANDARD SCHEMA FORMAT. NOTE THIS IS NOT THE SCHEMA
     public static final String SCHEMA_STANDARD_SPEC_URL = "http://www.w3.org/2001/XMLSchema";     
 
+    // COMPILED SCHEMAS, KEYED BY THE ABSOLUTE PATH OF THEIR FILE AND SHARED
+    // BY EVERY XMLUtilities AND EVERY THREAD. A Schema IS IMMUTABLE, SO
+    // THIS IS SAFE, AND COMPILING ONE COSTS FAR MORE THAN VALIDATING A
+    // SMALL DOCUMENT WITH IT
+    private static final ConcurrentHashMap<String, CachedSchema> SCHEMA_CACHE = new ConcurrentHashMap<>();
+
+    // NONE OF THE FACTORIES, BUILDERS OR PARSERS ARE THREAD SAFE, SO EACH
+    // THREAD KEEPS ITS OWN AND RESETS THEM BETWEEN USES. MAKING A BUILDER
+    // OR PARSER MAY FAIL, SO THOSE ARE MADE WHEN THEY'RE FIRST ASKED FOR
+    private static final ThreadLocal<SchemaFactory> SCHEMA_FACTORY = new ThreadLocal<SchemaFactory>()
+    {
+        @Override
+        protected SchemaFactory initialValue()
+        {
+            return SchemaFactory.newInstance(SCHEMA_STANDARD_SPEC_URL);
+        }
+    };
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<>();
+    private static final ThreadLocal<SAXParser> SAX_PARSER = new ThreadLocal<>();
+
     /**
      * Default Constructor, no data needs to be initialized.
      */
@@ -58,23 +88,17 @@ public class XMLUtilities
     {
         try
         {
-            // 1. Lookup a factory for the W3C XML Schema language
-            SchemaFactory factory = 
-                    SchemaFactory.newInstance(SCHEMA_STANDARD_SPEC_URL);
-            
-            // 2. Compile the schema. 
-            // Here the schema is loaded from a java.io.File, but you could use 
-            // a java.net.URL or a javax.xml.transform.Source instead.
-            File schemaLocation = new File(xmlSchemaNameAndPath);
-            Schema schema = factory.newSchema(schemaLocation);
+            // 1. Get the compiled schema, compiling it only if we
+            // haven't already or its file has changed since.
+            CachedSchema schema = getCachedSchema(xmlSchemaNameAndPath);
             
-            // 3. Get a validator from the schema.
-            Validator validator = schema.newValidator();
+            // 2. Get this thread's validator for the schema.
+            Validator validator = schema.getValidator();
             
-            // 4. Parse the document you want to check.
+            // 3. Parse the document you want to check.
             Source source = new StreamSource(xmlDocNameAndPath);
             
-            // 5. Check the document
+            // 4. Check the document
             validator.validate(source);
             return true;
         }
@@ -111,12 +135,10 @@ public class XMLUtilities
             throw new InvalidXMLFileFormatException(xmlFile, xsdFile);
         }
         
-        // THIS IS JAVA API STUFF
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         try
         {            
             // FIRST RETRIEVE AND LOAD THE FILE INTO A TREE
-            DocumentBuilder db = dbf.newDocumentBuilder();
+            DocumentBuilder db = getDocumentBuilder();
             Document xmlDoc = db.parse(xmlFile);
             xmlDoc.getDocumentElement().normalize();
            
@@ -132,6 +154,230 @@ public class XMLUtilities
         }           
     }   
     
+    /**
+     * This method reads the xmlFile once, validating it against the
+     * xsdFile as it goes, and tells the listener about each element as
+     * it's read. No DOM tree is built, so this takes the time and memory
+     * of a single parse.
+     * 
+     * Note that since elements are passed along as they're read, the
+     * listener may hear about some of them before a problem further on
+     * in the file is found. Anything it collects should only be used
+     * once this method returns normally.
+     * 
+     * @param xmlFile Path and name of xml file to load.
+     * 
+     * @param xsdFile Path and name of schema file to use for validation.
+     * 
+     * @param listener Told about each element of the document in order.
+     * 
+     * @throws InvalidXMLFileFormatException Thrown if the xml file can't be
+     * read or doesn't validate.
+     */
+    public void streamXMLDocument(String xmlFile, String xsdFile, final XMLElementListener listener)
+            throws InvalidXMLFileFormatException
+    {
+        try
+        {
+            // THE VALIDATOR SITS BETWEEN THE PARSER AND OUR HANDLER,
+            // CHECKING EACH EVENT BEFORE PASSING IT ALONG
+            Schema schema = getCachedSchema(xsdFile).getSchema();
+            ValidatorHandler validatorHandler = schema.newValidatorHandler();
+            validatorHandler.setErrorHandler(STRICT_ERROR_HANDLER);
+            validatorHandler.setContentHandler(new DefaultHandler()
+            {
+                // TEXT OF THE ELEMENTS BEING READ, INNERMOST LAST
+                private ArrayList<StringBuilder> texts = new ArrayList<>();
+
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes)
+                {
+                    texts.add(new StringBuilder());
+                    listener.elementStarted(localName.isEmpty() ? qName : localName, attributes);
+                }
+
+                @Override
+                public void characters(char[] ch, int start, int length)
+                {
+                    if (!texts.isEmpty())
+                    {
+                        texts.get(texts.size() - 1).append(ch, start, length);
+                    }
+                }
+
+                @Override
+                public void endElement(String uri, String localName, String qName)
+                {
+                    String text = texts.remove(texts.size() - 1).toString();
+                    listener.elementEnded(localName.isEmpty() ? qName : localName, text);
+                }
+            });
+
+            // NOW PARSE, WITH THE VALIDATOR GETTING EVERYTHING
+            XMLReader reader = getSAXParser().getXMLReader();
+            reader.setContentHandler(validatorHandler);
+            reader.setErrorHandler(STRICT_ERROR_HANDLER);
+            reader.parse(new InputSource(new File(xmlFile).toURI().toString()));
+        }
+        // FOR ANY EXCEPTION THAT OCCURS WE'LL BLAME
+        // IT ON AN INVALID XML FILE
+        catch (ParserConfigurationException | SAXException | IOException e)
+        {
+            throw new InvalidXMLFileFormatException(xmlFile, xsdFile);
+        }
+    }
+
+    /**
+     * This method gets the compiled schema for the xsdFile from the cache,
+     * compiling it and caching it first if it's not there or if the file
+     * has been modified since it was compiled.
+     * 
+     * @param xsdFile Path and name of the schema file.
+     * 
+     * @return The compiled schema.
+     * 
+     * @throws SAXException Thrown if the schema file can't be compiled.
+     */
+    private CachedSchema getCachedSchema(String xsdFile) throws SAXException
+    {
+        File schemaFile = new File(xsdFile);
+        String key = schemaFile.getAbsolutePath();
+        long lastModified = schemaFile.lastModified();
+        long length = schemaFile.length();
+        CachedSchema cached = SCHEMA_CACHE.get(key);
+        if ((cached != null) && cached.isCurrent(lastModified, length))
+        {
+            return cached;
+        }
+
+        // TWO THREADS MAY BOTH COMPILE A SCHEMA THE FIRST TIME IT'S USED,
+        // WHICH IS HARMLESS, SINCE EITHER RESULT WORKS JUST AS WELL
+        cached = new CachedSchema(SCHEMA_FACTORY.get().newSchema(schemaFile), lastModified, length);
+        SCHEMA_CACHE.put(key, cached);
+        return cached;
+    }
+
+    /**
+     * This method gets this thread's DocumentBuilder, ready to parse a
+     * new document.
+     * 
+     * @return The DocumentBuilder for the current thread.
+     * 
+     * @throws ParserConfigurationException Thrown if no builder can be made.
+     */
+    private DocumentBuilder getDocumentBuilder() throws ParserConfigurationException
+    {
+        DocumentBuilder db = DOCUMENT_BUILDER.get();
+        if (db == null)
+        {
+            db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            DOCUMENT_BUILDER.set(db);
+        }
+        else
+        {
+            db.reset();
+        }
+        return db;
+    }
+
+    /**
+     * This method gets this thread's namespace aware SAXParser, ready to
+     * parse a new document.
+     * 
+     * @return The SAXParser for the current thread.
+     * 
+     * @throws ParserConfigurationException Thrown if no parser can be made.
+     * 
+     * @throws SAXException Thrown if no parser can be made.
+     */
+    private SAXParser getSAXParser() throws ParserConfigurationException, SAXException
+    {
+        SAXParser parser = SAX_PARSER.get();
+        if (parser == null)
+        {
+            SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+            parserFactory.setNamespaceAware(true);
+            parser = parserFactory.newSAXParser();
+            SAX_PARSER.set(parser);
+        }
+        else
+        {
+            parser.reset();
+        }
+        return parser;
+    }
+
+    /**
+     * A compiled schema along with what its file looked like when it was
+     * compiled, so we can tell when it needs compiling again. Each thread
+     * that validates against it gets its own Validator, which is kept for
+     * the next time that thread needs it.
+     */
+    private static class CachedSchema
+    {
+        private final Schema schema;
+        private final long lastModified;
+        private final long length;
+        private final ThreadLocal<Validator> validators = new ThreadLocal<Validator>()
+        {
+            @Override
+            protected Validator initialValue()
+            {
+                return schema.newValidator();
+            }
+        };
+
+        public CachedSchema(Schema initSchema, long initLastModified, long initLength)
+        {
+            schema = initSchema;
+            lastModified = initLastModified;
+            length = initLength;
+        }
+
+        // ACCESSOR METHODS
+        public Schema getSchema()
+        {
+            return schema;
+        }
+
+        public boolean isCurrent(long fileLastModified, long fileLength)
+        {
+            return (lastModified == fileLastModified) && (length == fileLength);
+        }
+
+        /**
+         * This method gets this thread's Validator for the schema, reset
+         * so that nothing from its last use carries over.
+         * 
+         * @return The Validator for the current thread.
+         */
+        public Validator getValidator()
+        {
+            Validator validator = validators.get();
+            validator.reset();
+            return validator;
+        }
+    }
+
+    // TREATS ANY VALIDATION ERROR AS FATAL, SO PARSING STOPS AT THE FIRST ONE
+    private static final ErrorHandler STRICT_ERROR_HANDLER = new ErrorHandler()
+    {
+        @Override
+        public void warning(SAXParseException e) {}
+
+        @Override
+        public void error(SAXParseException e) throws SAXException
+        {
+            throw e;
+        }
+
+        @Override
+        public void fatalError(SAXParseException e) throws SAXException
+        {
+            throw e;
+        }
+    };
+
     /**
      * This method extracts the data found in the doc argument that 
      * corresponds to the tagName and returns it as text. If no data